@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The read path every caller of {@link AccessTokens} goes through, single
+ * threaded and with all cores reading from the same
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessTokensBenchmark {
+
+    @Param({ "1", "64" })
+    private int tokens;
+
+    private AccessTokenRefresher refresher;
+
+    private AccessToken accessToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // not started, nothing is refreshed in the background
+        refresher = (AccessTokenRefresher) Tokens.createAccessTokensWithUri(URI.create("http://localhost"))
+                                                 .manageToken("benchmark").done().getAccessTokenRefresher();
+        for (int i = 0; i < tokens; i++) {
+            refresher.accessTokens.put("token-" + i, new AccessToken("token-" + i, "Bearer", 3600,
+                    new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1))));
+        }
+        accessToken = refresher.accessTokens.get("token-0");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        refresher.stop();
+    }
+
+    @Benchmark
+    public String get() {
+        return refresher.get("token-0");
+    }
+
+    @Benchmark
+    public AccessToken getAccessToken() {
+        return refresher.getAccessToken("token-0");
+    }
+
+    @Benchmark
+    public boolean isExpired() {
+        return accessToken.isExpired();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AccessToken getAccessTokenContended(final ThreadToken threadToken) {
+        return refresher.getAccessToken(threadToken.tokenId);
+    }
+
+    /**
+     * Spreads the threads over the managed tokens.
+     */
+    @State(Scope.Thread)
+    public static class ThreadToken {
+
+        private static int next;
+
+        private Object tokenId;
+
+        @Setup(Level.Trial)
+        public void setUp(final AccessTokensBenchmark benchmark) {
+            synchronized (ThreadToken.class) {
+                tokenId = "token-" + (next++ % benchmark.tokens);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A full refresh run of all managed tokens against an in-process token
+ * endpoint, i.e. what {@link AccessTokenRefresher} costs apart from the
+ * latency of the real authorization server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// without nodelay the stub server's separate header and body writes hit delayed ACKs
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class RefreshCycleBenchmark {
+
+    private static final byte[] TOKEN_RESPONSE = "{\"access_token\":\"benchmark\",\"token_type\":\"Bearer\",\"expires_in\":3600}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "apache", "jdk" })
+    private String httpClient;
+
+    @Param({ "1", "16" })
+    private int tokens;
+
+    @Param({ "1", "4" })
+    private int parallelism;
+
+    private HttpServer server;
+
+    private AccessTokenRefresher refresher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oauth2/access_token", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, TOKEN_RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(TOKEN_RESPONSE);
+            }
+        });
+        server.start();
+
+        final ClientCredentials clientCredentials = new SimpleClientCredentials("benchmark", "id", "secret");
+        final AccessTokensBuilder builder = Tokens
+                .createAccessTokensWithUri(
+                        URI.create("http://localhost:" + server.getAddress().getPort() + "/oauth2/access_token"))
+                .usingClientCredentialsProvider(() -> clientCredentials)
+                .usingUserCredentialsProvider(NoopUserCredentials::new)
+                .refreshParallelism(parallelism);
+        if ("jdk".equals(httpClient)) {
+            builder.usingJdkHttpClient();
+        }
+        for (int i = 0; i < tokens; i++) {
+            builder.manageToken("token-" + i).addScope("uid").done();
+        }
+        // not started, the benchmark drives the refresh runs
+        refresher = (AccessTokenRefresher) builder.getAccessTokenRefresher();
+        if (refreshAll() == null) {
+            throw new IllegalStateException("Could not fetch tokens from the stub token endpoint");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        refresher.stop();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public Object refreshAll() {
+        for (int i = 0; i < tokens; i++) {
+            // makes the token due right away
+            refresher.invalidate("token-" + i);
+        }
+        refresher.run();
+        return refresher.accessTokens.get("token-0");
+    }
+}
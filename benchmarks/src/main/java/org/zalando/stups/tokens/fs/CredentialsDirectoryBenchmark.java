@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.stups.tokens.AccessToken;
+import org.zalando.stups.tokens.ClientCredentials;
+import org.zalando.stups.tokens.MetricsListener;
+import org.zalando.stups.tokens.Secret;
+
+/**
+ * One pass over a credentials directory as mounted in K8s: the per-handler
+ * {@link FilesystemReader}s, the single {@link CredentialsDirectoryScanner}
+ * pass reading every file, and the scanner skipping unchanged files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DCREDENTIALS_DIR=" + CredentialsDirectoryBenchmark.CREDENTIALS_DIR)
+@State(Scope.Benchmark)
+public class CredentialsDirectoryBenchmark {
+
+    static final String CREDENTIALS_DIR = "target/benchmark-credentials";
+
+    private static final MetricsListener NO_METRICS = (key, time) -> {
+    };
+
+    @Param({ "4", "64" })
+    private int tokens;
+
+    private final Map<Object, AccessToken> accessTokens = new HashMap<>();
+    private final Map<String, Secret> secrets = new HashMap<>();
+    private final Map<String, ClientCredentials> clientCredentials = new HashMap<>();
+
+    private File dir;
+    private AccessTokenHandler accessTokenHandler;
+    private SecretsHandler secretsHandler;
+    private ClientCredentialsHandler clientCredentialsHandler;
+    private CredentialsDirectoryScanner warmScanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = new File(CREDENTIALS_DIR);
+        deleteRecursively(dir.toPath());
+        Files.createDirectories(dir.toPath());
+        for (int i = 0; i < tokens; i++) {
+            write("token-" + i + "-token-type", "Bearer");
+            write("token-" + i + "-token-secret", "secret-" + i);
+        }
+        write("client-client-id", "id");
+        write("client-client-secret", "secret");
+
+        final TokenContentExtractor extractor = new DefaultFileSystemTokenContentExtractor();
+        accessTokenHandler = new AccessTokenHandler(accessTokens, extractor);
+        secretsHandler = new SecretsHandler(secrets);
+        clientCredentialsHandler = new ClientCredentialsHandler(clientCredentials);
+        warmScanner = newScanner();
+        warmScanner.scan(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteRecursively(dir.toPath());
+    }
+
+    @Benchmark
+    public int filesystemReaders() {
+        accessTokenHandler.getFilesystemReader().run();
+        secretsHandler.getFilesystemReader().run();
+        clientCredentialsHandler.getFilesystemReader().run();
+        return accessTokens.size();
+    }
+
+    @Benchmark
+    public int scannerReadingAllFiles() {
+        newScanner().scan(dir);
+        return accessTokens.size();
+    }
+
+    @Benchmark
+    public int scannerSkippingUnchangedFiles() {
+        warmScanner.scan(dir);
+        return accessTokens.size();
+    }
+
+    private CredentialsDirectoryScanner newScanner() {
+        return new CredentialsDirectoryScanner(Arrays.asList(accessTokenHandler, secretsHandler),
+                clientCredentialsHandler, NO_METRICS);
+    }
+
+    private void write(final String name, final String content) throws IOException {
+        Files.write(dir.toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
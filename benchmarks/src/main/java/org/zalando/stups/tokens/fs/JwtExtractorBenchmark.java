@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zalando.stups.tokens.AccessToken;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Extracting the expiry of JWTs read from the filesystem, the streaming
+ * {@link JwtFileSystemTokenContentExtractor} against the split and tree parse
+ * it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtExtractorBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // claims in front of 'exp', the streaming parser stops at 'exp'
+    @Param({ "0", "20" })
+    private int claimsBeforeExp;
+
+    private String token;
+
+    private final JwtFileSystemTokenContentExtractor extractor = new JwtFileSystemTokenContentExtractor();
+
+    @Setup
+    public void setUp() {
+        final StringBuilder payload = new StringBuilder("{\"sub\":\"benchmark\"");
+        for (int i = 0; i < claimsBeforeExp; i++) {
+            payload.append(",\"https://identity.zalando.com/claim-").append(i).append("\":\"value-").append(i)
+                   .append('"');
+        }
+        payload.append(",\"exp\":").append(Instant.now().plusSeconds(3600).getEpochSecond()).append('}');
+        final Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        token = encoder.encodeToString("{\"alg\":\"RS256\",\"kid\":\"benchmark\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(new byte[256]);
+    }
+
+    @Benchmark
+    public AccessToken streaming() {
+        return extractor.extract(token, "Bearer");
+    }
+
+    @Benchmark
+    public AccessToken splitAndTree() throws Exception {
+        final String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return new AccessToken(token, "Bearer", -1L, null);
+        }
+        final JsonNode node = OBJECT_MAPPER.readTree(Base64.getDecoder().decode(parts[1]));
+        final long expiration = node.get("exp").asLong(-1L);
+        final long initialValidSeconds = expiration - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        return new AccessToken(token, "Bearer", initialValidSeconds, Date.from(Instant.ofEpochSecond(expiration)));
+    }
+}
@@ -20,33 +20,53 @@ import static java.lang.String.format;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class AbstractAccessTokenRefresher implements AccessTokens {
+public abstract class AbstractAccessTokenRefresher implements AsyncAccessTokens {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractAccessTokenRefresher.class);
 
     private static final String NOT_AVAILABLE_TEMPLATE = "No token available for tokenId '%s'. Tokens are available for the following tokenIds %s";
     private static final String EXPIRED_TEMPLATE = "AccessToken for tokenId '%s' expired.";
+    private static final String STOPPED_TEMPLATE = "Stopped before an AccessToken for tokenId '%s' was available.";
 
     private static final long ONE_YEAR_SECONDS = TimeUnit.DAYS.toSeconds(365);
     private static final String FIXED_TOKENS_ENV_VAR = "OAUTH2_ACCESS_TOKENS";
+    protected static final String FIXED_TOKEN_TYPE = "fixed";
+    private static final String LOOKUP_METRICS_KEY_PREFIX = "tokens.lookup";
 
     protected final TokenRefresherConfiguration configuration;
     protected final ScheduledExecutorService scheduler;
+    protected final MetricsListener metricsListener;
 
     protected final ConcurrentHashMap<Object, AccessToken> accessTokens = new ConcurrentHashMap<>();
 
+    private final MetricsListener.Counter lookupHits;
+    private final MetricsListener.Counter lookupMisses;
+    private final MetricsListener.Counter lookupExpired;
+
+    private final ConcurrentHashMap<Object, CompletableFuture<AccessToken>> readiness = new ConcurrentHashMap<>();
+
+    private volatile boolean stopped = false;
+
     private String availableTokenIds;
 
     public AbstractAccessTokenRefresher(TokenRefresherConfiguration configuration) {
         this.configuration = configuration;
         this.scheduler = configuration.getExecutorService();
+        this.metricsListener = MetricHandles.orNoop(configuration.getMetricsListener());
+        final MetricsListener lookupListener = MetricHandles.forReadPath(configuration.getMetricsListener());
+        this.lookupHits = lookupListener.counter(LOOKUP_METRICS_KEY_PREFIX + ".hit");
+        this.lookupMisses = lookupListener.counter(LOOKUP_METRICS_KEY_PREFIX + ".miss");
+        this.lookupExpired = lookupListener.counter(LOOKUP_METRICS_KEY_PREFIX + ".expired");
     }
 
     protected void initializeFixedTokensFromEnvironment() {
@@ -61,7 +81,8 @@ public abstract class AbstractAccessTokenRefresher implements AccessTokens {
                 final String[] keyValue = token.split("=");
                 if (keyValue.length == 2) {
                     LOG.info("Using fixed access token {}..", keyValue[0]);
-                    accessTokens.put(keyValue[0], new AccessToken(keyValue[1], "fixed", expiresInSeconds, validUntil));
+                    accessTokens.put(keyValue[0], new AccessToken(keyValue[1], FIXED_TOKEN_TYPE, expiresInSeconds,
+                            validUntil));
                 } else {
                     LOG.error("Could not create access token from {}", token);
                 }
@@ -71,6 +92,65 @@ public abstract class AbstractAccessTokenRefresher implements AccessTokens {
 
     public abstract void start();
 
+    /**
+     * Start without waiting for the tokens, see
+     * {@link AsyncAccessTokens#whenReady(Object)}. The default implementation
+     * starts synchronously.
+     */
+    public void startAsync() {
+        start();
+        signalReady();
+    }
+
+    @Override
+    public CompletableFuture<AccessToken> whenReady(final Object tokenId) {
+        final CompletableFuture<AccessToken> ready = readiness.computeIfAbsent(tokenId,
+                id -> new CompletableFuture<>());
+        // the token may have arrived before the future was registered
+        signalReady(tokenId);
+        if (stopped) {
+            // registered after stop() failed the pending ones
+            failReadiness(tokenId, ready);
+        }
+        return ready;
+    }
+
+    @Override
+    public boolean awaitReady(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final List<CompletableFuture<AccessToken>> all = new ArrayList<>();
+        for (final AccessTokenConfiguration tokenConfig : configuration.getAccessTokenConfigurations()) {
+            all.add(whenReady(tokenConfig.getTokenId()));
+        }
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Complete the {@link #whenReady(Object)} future of the supplied
+     * <i>tokenId</i> if a valid token is available, to be called after
+     * putting a token into {@link #accessTokens}.
+     */
+    protected void signalReady(final Object tokenId) {
+        final CompletableFuture<AccessToken> ready = readiness.get(tokenId);
+        if (ready != null && !ready.isDone()) {
+            final AccessToken token = accessTokens.get(tokenId);
+            if (token != null && !token.isExpired()) {
+                ready.complete(token);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #signalReady(Object)} for all <i>tokenIds</i> waited for.
+     */
+    protected void signalReady() {
+        readiness.keySet().forEach(this::signalReady);
+    }
+
     protected String getFixedToken() {
         final String tokens = System.getProperty(FIXED_TOKENS_ENV_VAR);
         if (tokens == null) {
@@ -88,6 +168,14 @@ public abstract class AbstractAccessTokenRefresher implements AccessTokens {
     @Override
     public AccessToken getAccessToken(final Object tokenId) throws AccessTokenUnavailableException {
         final AccessToken token = accessTokens.get(tokenId);
+        countLookup(token);
+        if (token == null || token.isExpired()) {
+            final AccessToken refreshed = refreshOnDemand(tokenId);
+            if (refreshed != null && !refreshed.isExpired()) {
+                return refreshed;
+            }
+        }
+
         if (token == null) {
             throw new AccessTokenUnavailableException(format(NOT_AVAILABLE_TEMPLATE, tokenId.toString(), getAvailableTokenIds()));
         }
@@ -99,6 +187,44 @@ public abstract class AbstractAccessTokenRefresher implements AccessTokens {
         return token;
     }
 
+    @Override
+    public AccessTokenLookup lookup(final Object tokenId) {
+        final AccessToken token = accessTokens.get(tokenId);
+        countLookup(token);
+        if (token == null) {
+            return AccessTokenLookup.missing();
+        }
+
+        if (token.isExpired()) {
+            return AccessTokenLookup.expired(token);
+        }
+
+        return AccessTokenLookup.available(token);
+    }
+
+    private void countLookup(final AccessToken token) {
+        if (token == null) {
+            lookupMisses.increment();
+        } else if (token.isExpired()) {
+            lookupExpired.increment();
+        } else {
+            lookupHits.increment();
+        }
+    }
+
+    /**
+     * Hook invoked by {@link #getAccessToken(Object)} when the token for the
+     * supplied <i>tokenId</i> is missing or expired.
+     *
+     * @param tokenId
+     *            the <i>tokenId</i> to refresh
+     * @return the refreshed {@link AccessToken} or <i>null</i> if there is
+     *         none, the default implementation does not refresh at all
+     */
+    protected AccessToken refreshOnDemand(final Object tokenId) {
+        return null;
+    }
+
     protected String getAvailableTokenIds() {
         if(availableTokenIds == null) {
             List<String> tokenIds = new ArrayList<String>();
@@ -117,6 +243,12 @@ public abstract class AbstractAccessTokenRefresher implements AccessTokens {
 
     @Override
     public void stop() {
+        stopped = true;
         scheduler.shutdown();
+        readiness.forEach(AbstractAccessTokenRefresher::failReadiness);
+    }
+
+    private static void failReadiness(final Object tokenId, final CompletableFuture<AccessToken> ready) {
+        ready.completeExceptionally(new AccessTokenUnavailableException(format(STOPPED_TEMPLATE, tokenId)));
     }
 }
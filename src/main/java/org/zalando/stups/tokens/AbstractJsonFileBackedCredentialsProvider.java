@@ -17,13 +17,22 @@ package org.zalando.stups.tokens;
 
 import java.io.File;
 
+import org.zalando.stups.tokens.util.FileFingerprint;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+/**
+ * Reads credentials from a JSON file. The parsed credentials are cached and
+ * the file is only parsed again once its {@link FileFingerprint} changed, so
+ * asking for credentials on every token refresh costs a single <i>stat</i>.
+ */
 public abstract class AbstractJsonFileBackedCredentialsProvider {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private final FileSupplier fileSupplier;
 
+    private volatile Cached cached;
+
     public AbstractJsonFileBackedCredentialsProvider(final String filename) {
         this.fileSupplier = new FileSupplier(filename);
     }
@@ -38,9 +47,31 @@ public abstract class AbstractJsonFileBackedCredentialsProvider {
 
     protected <T> T read(final Class<T> cls) {
         try {
-            return OBJECT_MAPPER.readValue(getFile(), cls);
+            final File file = getFile();
+            // taken before reading, a change in between only causes another read
+            final FileFingerprint fingerprint = FileFingerprint.of(file.toPath());
+            final Cached current = cached;
+            if (current != null && current.type == cls && current.fingerprint.equals(fingerprint)) {
+                return cls.cast(current.value);
+            }
+
+            final T value = OBJECT_MAPPER.readValue(file, cls);
+            cached = new Cached(fingerprint, cls, value);
+            return value;
         } catch (final Throwable e) {
             throw new CredentialsUnavailableException(e.getMessage(), e);
         }
     }
+
+    private static final class Cached {
+        private final FileFingerprint fingerprint;
+        private final Class<?> type;
+        private final Object value;
+
+        private Cached(FileFingerprint fingerprint, Class<?> type, Object value) {
+            this.fingerprint = fingerprint;
+            this.type = type;
+            this.value = value;
+        }
+    }
 }
@@ -26,6 +26,7 @@ public class AccessToken {
     private final String type;
     private final long initialValidSeconds;
     private final Date validUntil;
+    private final long validUntilMillis;
     private final long creationTimestamp;
 
     /**
@@ -46,6 +47,7 @@ public class AccessToken {
         this.type = type;
         this.initialValidSeconds = initialValidSeconds;
         this.validUntil = validUntil;
+        this.validUntilMillis = validUntil == null ? Long.MAX_VALUE : validUntil.getTime();
         this.creationTimestamp = creationTimestamp;
     }
 
@@ -89,6 +91,18 @@ public class AccessToken {
         return validUntil;
     }
 
+    /**
+     * The point in time until when this {@link AccessToken} is valid as UNIX timestamp (in
+     * milliseconds).
+     *
+     * @return  The number of milliseconds since 1970-01-01 00:00:00.000 until when this
+     * {@link AccessToken} is valid; {@link Long#MAX_VALUE} if there is no known expiry, i.e.
+     * {@link AccessToken#getValidUntil()} returns <i>null</i>
+     */
+    public long getValidUntilMillis() {
+        return validUntilMillis;
+    }
+
     /**
      * Tell whether this {@link AccessToken} is expired.
      *
@@ -97,7 +111,8 @@ public class AccessToken {
      * in the future; {@link Boolean#TRUE} otherwise
      */
     public boolean isExpired() {
-        return validUntil != null && validUntil.before(new Date());
+        // compares primitives only, this is called for every token lookup
+        return validUntilMillis < System.currentTimeMillis();
     }
 
     /**
@@ -24,6 +24,8 @@ import java.io.IOException;
 @SuppressWarnings("serial")
 public class AccessTokenEndpointException extends IllegalStateException {
 
+    private final int statusCode;
+
     public static AccessTokenEndpointException from(HttpResponse response) {
         final StringBuilder message = new StringBuilder();
         message.append(response.getStatusLine().toString());
@@ -38,21 +40,65 @@ public class AccessTokenEndpointException extends IllegalStateException {
             }
         }
 
-        return new AccessTokenEndpointException(message.toString());
+        return new AccessTokenEndpointException(message.toString(), response.getStatusLine().getStatusCode());
+    }
+
+    public static AccessTokenEndpointException from(final int statusCode, final String body) {
+        final StringBuilder message = new StringBuilder();
+        message.append("HTTP ").append(statusCode);
+        if (body != null && !body.isEmpty()) {
+            message.append("\n").append("Response Body:").append("\n").append(body);
+        }
+        return new AccessTokenEndpointException(message.toString(), statusCode);
     }
 
     public AccessTokenEndpointException() {
+        this.statusCode = -1;
     }
 
     public AccessTokenEndpointException(final String s) {
+        this(s, -1);
+    }
+
+    public AccessTokenEndpointException(final String s, final int statusCode) {
         super(s);
+        this.statusCode = statusCode;
     }
 
     public AccessTokenEndpointException(final String message, final Throwable cause) {
         super(message, cause);
+        this.statusCode = -1;
     }
 
     public AccessTokenEndpointException(final Throwable cause) {
         super(cause);
+        this.statusCode = -1;
+    }
+
+    /**
+     * @return the HTTP status code the token endpoint responded with, -1 if
+     *         unknown
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Client errors other than throttling concern the request for a single
+     * token, e.g. an unknown scope, not the token endpoint as a whole.
+     * 
+     * @param t
+     *            the failure, searched along its causes
+     * @return whether the failure is a client error of the token endpoint
+     */
+    public static boolean isClientError(Throwable t) {
+        for (int depth = 0; t != null && depth < 10; depth++, t = t.getCause()) {
+            final int statusCode = t instanceof AccessTokenEndpointException
+                    ? ((AccessTokenEndpointException) t).getStatusCode() : -1;
+            if (statusCode != -1) {
+                return statusCode >= 400 && statusCode < 500 && statusCode != 429;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.util.Optional;
+
+/**
+ * Result of looking up an {@link AccessToken} via {@link AccessTokens#lookup(Object)}. Unlike
+ * {@link AccessTokens#getAccessToken(Object)} a lookup never throws, it tells by its
+ * {@link Status} whether the access token is available, missing or expired. This keeps the
+ * unhappy path cheap, there is neither a message to format nor a stack trace to capture, which
+ * matters when callers hammer a downstream service during an outage of the authorization server.
+ */
+public final class AccessTokenLookup {
+
+    /**
+     * The outcome of a lookup.
+     */
+    public enum Status {
+        /**
+         * An access token is available and not expired.
+         */
+        AVAILABLE,
+
+        /**
+         * There is no access token for the <i>tokenId</i>, either because it has never been
+         * fetched, it has been invalidated or the <i>tokenId</i> is not managed at all.
+         */
+        MISSING,
+
+        /**
+         * The access token for the <i>tokenId</i> has expired and could not be refreshed in time.
+         */
+        EXPIRED
+    }
+
+    private static final AccessTokenLookup MISSING = new AccessTokenLookup(Status.MISSING, null);
+
+    private final Status status;
+    private final AccessToken accessToken;
+
+    private AccessTokenLookup(final Status status, final AccessToken accessToken) {
+        this.status = status;
+        this.accessToken = accessToken;
+    }
+
+    static AccessTokenLookup available(final AccessToken accessToken) {
+        return new AccessTokenLookup(Status.AVAILABLE, accessToken);
+    }
+
+    static AccessTokenLookup expired(final AccessToken accessToken) {
+        return new AccessTokenLookup(Status.EXPIRED, accessToken);
+    }
+
+    static AccessTokenLookup missing() {
+        return MISSING;
+    }
+
+    /**
+     * @return  The {@link Status} of this lookup; will always be a non null value
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return  <i>true</i> in case an access token that is not yet expired has been found
+     */
+    public boolean isAvailable() {
+        return status == Status.AVAILABLE;
+    }
+
+    /**
+     * Get the {@link AccessToken} found by this lookup.
+     *
+     * @return  The {@link AccessToken} in case of {@link Status#AVAILABLE} or
+     * {@link Status#EXPIRED}; <i>null</i> in case of {@link Status#MISSING}
+     */
+    public AccessToken getAccessToken() {
+        return accessToken;
+    }
+
+    /**
+     * @return  The available {@link AccessToken} or {@link Optional#empty()} in case it is missing
+     * or expired
+     */
+    public Optional<AccessToken> toOptional() {
+        return isAvailable() ? Optional.of(accessToken) : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "AccessTokenLookup{" +
+                "status=" + status +
+                ", accessToken=" + accessToken +
+                '}';
+    }
+}
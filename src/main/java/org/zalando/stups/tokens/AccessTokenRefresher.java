@@ -15,52 +15,262 @@
  */
 package org.zalando.stups.tokens;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.stups.tokens.mcb.MCB;
+import org.zalando.stups.tokens.mcb.MCBConfig;
+import org.zalando.stups.tokens.mcb.MCBState;
+import org.zalando.stups.tokens.util.LatencyHistogram;
 import org.zalando.stups.tokens.util.Metrics;
 import org.zalando.stups.tokens.util.Objects;
+import org.zalando.stups.tokens.util.TokenBucket;
 
-class AccessTokenRefresher extends AbstractAccessTokenRefresher implements AccessTokens, Runnable {
+class AccessTokenRefresher extends AbstractAccessTokenRefresher
+        implements AccessTokens, CircuitBreakers, EndpointLatencies, Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(AccessTokenRefresher.class);
 
     private static final String METRICS_KEY_PREFIX = "tokens.refresher";
 
+    // upper bound for sleeping until the next deadline, guards against wall clock jumps
+    private static final long MAX_SLEEP_MILLIS = MINUTES.toMillis(5);
+
+    // shared by all tokens, opened by transport errors
     private final MCB mcb;
 
+    // opened by errors that concern a single token, e.g. an unknown scope
+    private final Map<Object, MCB> tokenBreakers = new HashMap<>();
+
     private final Set<Object> invalidTokens = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 
     private final TokenVerifyRunner verifyRunner;
 
-    private final MetricsListener metricsListener;
+    private final LatencyTrackingMetricsListener latencies;
+
+    private final MetricsListener.Timer refreshSuccessTimer;
+
+    private final MetricsListener.Timer refreshFailureTimer;
+
+    private final MetricsListener.Counter refreshAttempts;
+
+    private final MetricsListener.Counter refreshThrottled;
+
+    private final MetricsListener.Histogram grantedExpiresIn;
+
+    private final ExecutorService refreshExecutor;
+
+    private final Map<Object, AccessTokenConfiguration> tokenConfigs = new LinkedHashMap<>();
+
+    private final RefreshSchedule refreshSchedule = new RefreshSchedule();
+
+    private final Object refreshLock = new Object();
+
+    private final Object scheduleLock = new Object();
+
+    private ScheduledFuture<?> nextRun;
+
+    private volatile boolean started = false;
+
+    private volatile boolean breakerOpen = false;
+
+    private final ConcurrentHashMap<Object, CompletableFuture<AccessToken>> onDemandRefreshes = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Void>> inFlightRefreshes = new ConcurrentHashMap<>();
+
+    private final TokenSnapshot snapshot;
+
+    /**
+     * Only the factory the builder created, one supplied by the caller may be
+     * shared with other instances.
+     */
+    private final Closeable ownedHttpProviderFactory;
+
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
 
     public AccessTokenRefresher(final TokenRefresherConfiguration configuration) {
         super(configuration);
-        this.metricsListener = configuration.getMetricsListener();
-        this.verifyRunner = new TokenVerifyRunner(configuration, accessTokens, invalidTokens);
-        this.mcb = new MCB(configuration.getTokenRefresherMcbConfig());
+        this.latencies = new LatencyTrackingMetricsListener(metricsListener);
+        this.refreshSuccessTimer = latencies.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, true));
+        this.refreshFailureTimer = latencies.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, false));
+        this.refreshAttempts = metricsListener.counter(METRICS_KEY_PREFIX + ".attempts");
+        this.refreshThrottled = metricsListener.counter(METRICS_KEY_PREFIX + ".throttled");
+        this.grantedExpiresIn = metricsListener.histogram(METRICS_KEY_PREFIX + ".expires_in");
+        this.verifyRunner = new TokenVerifyRunner(configuration, accessTokens, invalidTokens, this::refreshSoon,
+                latencies);
+        for (final AccessTokenConfiguration tokenConfig : configuration.getAccessTokenConfigurations()) {
+            tokenConfigs.put(tokenConfig.getTokenId(), tokenConfig);
+            // nothing known yet, so everything is due
+            refreshSchedule.schedule(tokenConfig.getTokenId(), 0);
+        }
+        final MCBConfig mcbConfig = configuration.getTokenRefresherMcbConfig() != null
+                ? configuration.getTokenRefresherMcbConfig() : new MCBConfig.Builder().build();
+        this.mcb = new MCB(mcbConfig, MetricHandles.transitionCounters(metricsListener, METRICS_KEY_PREFIX + ".mcb"));
+        final Consumer<MCBState> tokenTransitions = MetricHandles.transitionCounters(metricsListener,
+                METRICS_KEY_PREFIX + ".mcb.token");
+        for (final Object tokenId : tokenConfigs.keySet()) {
+            tokenBreakers.put(tokenId, new MCB(
+                    new MCBConfig.Builder(mcbConfig).withName(mcbConfig.getName() + "-" + tokenId).build(),
+                    tokenTransitions));
+            metricsListener.registerGauge("tokens.seconds_to_expiry." + tokenId, () -> secondsToExpiry(tokenId));
+        }
+        this.snapshot = configuration.getTokenSnapshotFile() != null
+                ? new TokenSnapshot(configuration.getTokenSnapshotFile(), configuration.getTokenSnapshotKey()) : null;
+        final HttpProviderFactory httpProviderFactory = configuration.getHttpProviderFactory();
+        this.ownedHttpProviderFactory = configuration instanceof AccessTokensBuilder
+                && ((AccessTokensBuilder) configuration).ownsHttpProviderFactory()
+                && httpProviderFactory instanceof Closeable ? (Closeable) httpProviderFactory : null;
+        if (configuration.getRefreshParallelism() > 1) {
+            this.refreshExecutor = Executors.newFixedThreadPool(configuration.getRefreshParallelism(),
+                    new TokenRefresherThreadFactory());
+        } else {
+            this.refreshExecutor = null;
+        }
     }
 
     @Override
     public void start() {
         initializeFixedTokensFromEnvironment();
-        LOG.info("Starting to refresh tokens regularly...");
+        loadSnapshot();
+        LOG.info("Starting to refresh tokens when they are due...");
         run();
 
-        // #10, increase 'period' to 5 to avoid flooding the endpoint
-        scheduler.scheduleAtFixedRate(this, 1, configuration.getSchedulingPeriod(),
-                configuration.getSchedulingTimeUnit());
+        started = true;
+        scheduleNextRun();
+        scheduleVerification();
+    }
+
+    /**
+     * The first run is not waited for. It fetches all due tokens at once, up
+     * to <i>maxConnections</i> at a time independent of
+     * <i>refreshParallelism</i>, so even a blocking {@link HttpProvider} does
+     * not fetch them one after the other.
+     */
+    @Override
+    public void startAsync() {
+        initializeFixedTokensFromEnvironment();
+        loadSnapshot();
+        LOG.info("Starting to refresh tokens in the background...");
+
+        started = true;
+        fetchDueTokensAsync();
+        scheduleNextRun();
+        scheduleVerification();
+    }
+
+    /**
+     * Polling installs retries, so the scheduled runs do not fetch the same
+     * tokens again meanwhile.
+     */
+    private void fetchDueTokensAsync() {
+        final List<AccessTokenConfiguration> due;
+        synchronized (refreshLock) {
+            due = pollDueTokenConfigs();
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        final HttpConfig httpConfig = configuration.getHttpConfig();
+        final int maxConnections = httpConfig != null ? httpConfig.getMaxConnections() : 1;
+        final int parallelism = Math.min(due.size(), Math.max(maxConnections, configuration.getRefreshParallelism()));
+        final ExecutorService fetchExecutor = Executors.newFixedThreadPool(parallelism,
+                new TokenRefresherThreadFactory());
+        final CompletableFuture<?>[] fetches = new CompletableFuture<?>[due.size()];
+        for (int i = 0; i < fetches.length; i++) {
+            final AccessTokenConfiguration tokenConfig = due.get(i);
+            fetches[i] = CompletableFuture.runAsync(() -> refresh(tokenConfig), fetchExecutor);
+        }
+        CompletableFuture.allOf(fetches).whenComplete((v, t) -> {
+            fetchExecutor.shutdown();
+            scheduleNextRun();
+        });
+    }
 
+    private void scheduleVerification() {
         // #36
         scheduler.scheduleAtFixedRate(verifyRunner, 5, configuration.getTokenVerifierSchedulingPeriod(),
                 configuration.getTokenVerifierSchedulingTimeUnit());
     }
 
+    /**
+     * Serve the tokens of the snapshot right away, the first run only
+     * refreshes those that are due.
+     */
+    private void loadSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+        final Map<String, AccessToken> tokens = snapshot.load();
+        for (final Object tokenId : tokenConfigs.keySet()) {
+            final AccessToken token = tokens.get(tokenId.toString());
+            if (token != null) {
+                // fixed tokens from the environment take precedence
+                accessTokens.putIfAbsent(tokenId, token);
+                signalReady(tokenId);
+            }
+        }
+    }
+
+    /**
+     * Coalesces the refreshes of a run into a single write.
+     */
+    private void storeSnapshotSoon() {
+        if (snapshot == null || !snapshotPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(() -> {
+                snapshotPending.set(false);
+                snapshot.store(managedTokens());
+            });
+        } catch (RejectedExecutionException e) {
+            snapshotPending.set(false);
+        }
+    }
+
+    /**
+     * @return the current tokens of the configured <i>tokenIds</i>, without
+     *         the fixed ones from the environment
+     */
+    private Map<Object, AccessToken> managedTokens() {
+        final Map<Object, AccessToken> tokens = new HashMap<>();
+        for (final Object tokenId : tokenConfigs.keySet()) {
+            final AccessToken token = accessTokens.get(tokenId);
+            // a fixed token may use the tokenId of a managed one
+            if (token != null && !FIXED_TOKEN_TYPE.equals(token.getType())) {
+                tokens.put(tokenId, token);
+            }
+        }
+        return tokens;
+    }
+
     static int percentLeft(final AccessToken token) {
         final long now = System.currentTimeMillis();
         final long validUntil = token.getValidUntil().getTime();
@@ -70,7 +280,23 @@ class AccessTokenRefresher extends AbstractAccessTokenRefresher implements Acces
     }
 
     static boolean shouldRefresh(final AccessToken token, final TokenRefresherConfiguration configuration) {
-        return percentLeft(token) <= configuration.getRefreshPercentLeft();
+        return percentLeft(token) <= refreshPercentLeft(token, configuration);
+    }
+
+    /**
+     * The configured <i>refresh percentage left</i> plus a share of the
+     * <i>refresh jitter percentage</i> derived from the token, so instances
+     * holding different tokens refresh at different points while each token
+     * keeps a stable one.
+     */
+    static int refreshPercentLeft(final AccessToken token, final TokenRefresherConfiguration configuration) {
+        final int jitter = configuration.getRefreshJitterPercent();
+        if (jitter <= 0) {
+            return configuration.getRefreshPercentLeft();
+        }
+        // spread similar tokens (e.g. sharing a JWT header) over the whole range
+        final int hash = java.util.Objects.hashCode(token.getToken()) * 0x9E3779B9;
+        return Math.min(100, configuration.getRefreshPercentLeft() + Math.floorMod(hash ^ (hash >>> 16), jitter + 1));
     }
 
     static boolean shouldWarn(final AccessToken token, final TokenRefresherConfiguration configuration) {
@@ -84,62 +310,418 @@ class AccessTokenRefresher extends AbstractAccessTokenRefresher implements Acces
         return invalidTokens.contains(token);
     }
 
+    /**
+     * Point in time (epoch millis) when the supplied token reaches its
+     * <i>refresh percentage left</i>, see
+     * {@link #refreshPercentLeft(AccessToken, TokenRefresherConfiguration)}.
+     */
+    long refreshDeadline(final AccessToken token) {
+        if (token.getValidUntil() == null) {
+            return Long.MAX_VALUE;
+        }
+        final long refreshWindow = SECONDS.toMillis(token.getInitialValidSeconds())
+                * refreshPercentLeft(token, configuration) / 100;
+        return token.getValidUntilMillis() - refreshWindow;
+    }
+
+    private long retryDelayMillis() {
+        return configuration.getSchedulingTimeUnit().toMillis(configuration.getSchedulingPeriod());
+    }
+
+    /**
+     * Refreshes all tokens that are due according to the {@link RefreshSchedule}.
+     */
     @Override
     public void run() {
-        if (mcb.isClosed()) {
-            for (final AccessTokenConfiguration tokenConfig : configuration.getAccessTokenConfigurations()) {
-                try {
-                    final AccessToken oldToken = accessTokens.get(tokenConfig.getTokenId());
-
-                    if (oldToken == null || shouldRefresh(oldToken, configuration) || isInvalid(oldToken)) {
-                        try {
-                            LOG.trace("Refreshing access token {}...", tokenConfig.getTokenId());
-
-                            final AccessToken newToken = createToken(tokenConfig);
-                            // validate
-                            Objects.notNull("newToken", newToken);
-                            accessTokens.put(tokenConfig.getTokenId(), newToken);
-                            if (oldToken != null) {
-                                invalidTokens.remove(oldToken);
-                            }
-                            mcb.onSuccess();
-                            LOG.info("Refreshed access token {}.", tokenConfig.getTokenId());
-                        } catch (final Throwable t) {
-                            if (oldToken == null || shouldWarn(oldToken, configuration)) {
-                                LOG.warn("Cannot refresh access token " + tokenConfig.getTokenId(), t);
-                            } else {
-                                LOG.info("Cannot refresh access token {}", tokenConfig.getTokenId(), t);
-                            }
-                            mcb.onError();
-                        }
-                    }
-                } catch (Throwable t) {
-                    mcb.onError();
-                    LOG.warn("Unexpected problem during token refresh run! TokenId: " + tokenConfig.getTokenId(), t);
+        synchronized (refreshLock) {
+            // polling installs retries, so due tokens skipped while the breaker is open are not lost
+            final List<AccessTokenConfiguration> due = pollDueTokenConfigs();
+            if (due.isEmpty()) {
+                LOG.trace("No access token due for refresh");
+            } else {
+                // cleared again by the first refresh the transport breaker rejects
+                breakerOpen = false;
+                if (refreshExecutor == null || due.size() == 1) {
+                    refreshAsynchronously(due);
+                } else {
+                    refreshConcurrently(due);
                 }
             }
+        }
+    }
+
+    private List<AccessTokenConfiguration> pollDueTokenConfigs() {
+        final long now = System.currentTimeMillis();
+        final List<AccessTokenConfiguration> due = new ArrayList<>();
+        for (final Object tokenId : refreshSchedule.pollDue(now, now + retryDelayMillis())) {
+            final AccessTokenConfiguration tokenConfig = tokenConfigs.get(tokenId);
+            if (tokenConfig != null) {
+                due.add(tokenConfig);
+            }
+        }
+        return due;
+    }
+
+    private void runAndScheduleNext() {
+        try {
+            run();
+        } finally {
+            scheduleNextRun();
+        }
+    }
+
+    /**
+     * Sleep until the earliest refresh deadline, or for the <i>scheduling
+     * period</i> while the circuit breaker is open.
+     */
+    private void scheduleNextRun() {
+        synchronized (scheduleLock) {
+            if (!started) {
+                return;
+            }
+            final long delay;
+            if (breakerOpen) {
+                delay = retryDelayMillis();
+            } else {
+                delay = Math.max(0, Math.min(refreshSchedule.nextDeadline() - System.currentTimeMillis(),
+                        MAX_SLEEP_MILLIS));
+            }
+            if (nextRun != null) {
+                nextRun.cancel(false);
+            }
+            try {
+                nextRun = scheduler.schedule(this::runAndScheduleNext, delay, MILLISECONDS);
+                LOG.trace("Next token refresh run in {} ms", delay);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Scheduler has been shut down, stop refreshing tokens");
+            }
+        }
+    }
+
+    /**
+     * Make the supplied <i>tokenId</i> due and wake up the refresher, e.g.
+     * because the token has been invalidated.
+     */
+    void refreshSoon(final Object tokenId) {
+        if (tokenConfigs.containsKey(tokenId)) {
+            refreshSchedule.schedule(tokenId, 0);
+            scheduleNextRun();
+        }
+    }
+
+    /**
+     * Single-flight refresh: the first caller for a <i>tokenId</i> starts the
+     * refresh, concurrent callers wait for the same {@link CompletableFuture}.
+     */
+    @Override
+    protected AccessToken refreshOnDemand(final Object tokenId) {
+        final long timeout = configuration.getOnDemandRefreshTimeoutMillis();
+        final AccessTokenConfiguration tokenConfig = tokenConfigs.get(tokenId);
+        if (timeout <= 0 || tokenConfig == null) {
+            return null;
+        }
+
+        try {
+            return onDemandRefreshes.computeIfAbsent(tokenId, id -> startOnDemandRefresh(tokenConfig))
+                                    .get(timeout, MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.debug("On-demand refresh of access token {} did not complete within {} ms", tokenId, timeout);
+        } catch (ExecutionException | RejectedExecutionException e) {
+            LOG.debug("On-demand refresh of access token {} failed", tokenId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private CompletableFuture<AccessToken> startOnDemandRefresh(final AccessTokenConfiguration tokenConfig) {
+        final CompletableFuture<AccessToken> refresh = new CompletableFuture<>();
+        final Executor executor = refreshExecutor != null ? refreshExecutor : scheduler;
+        executor.execute(() -> {
+            try {
+                refresh(tokenConfig);
+                refresh.complete(accessTokens.get(tokenConfig.getTokenId()));
+            } catch (Throwable t) {
+                refresh.completeExceptionally(t);
+            } finally {
+                onDemandRefreshes.remove(tokenConfig.getTokenId(), refresh);
+            }
+        });
+        return refresh;
+    }
+
+    @Override
+    public void invalidate(final Object tokenId) {
+        super.invalidate(tokenId);
+        refreshSoon(tokenId);
+    }
+
+    private void refreshConcurrently(final Collection<AccessTokenConfiguration> due) {
+        final List<Callable<Void>> tasks = new ArrayList<>(due.size());
+        for (final AccessTokenConfiguration tokenConfig : due) {
+            tasks.add(() -> {
+                refresh(tokenConfig);
+                return null;
+            });
+        }
+        try {
+            refreshExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for concurrent token refresh run to complete");
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Refresh executor has been shut down, skip refresh");
+        }
+    }
+
+    /**
+     * Starts the refreshes of all supplied tokens through
+     * {@link HttpProvider#createTokenAsync(AccessTokenConfiguration)} before
+     * waiting for any of them. With a non-blocking {@link HttpProvider} they
+     * are all in flight at the same time, otherwise they run one after the
+     * other.
+     */
+    private void refreshAsynchronously(final List<AccessTokenConfiguration> due) {
+        final CompletableFuture<?>[] refreshes = new CompletableFuture<?>[due.size()];
+        for (int i = 0; i < refreshes.length; i++) {
+            refreshes[i] = refreshAsync(due.get(i));
+        }
+        CompletableFuture.allOf(refreshes).join();
+    }
+
+    private void refresh(final AccessTokenConfiguration tokenConfig) {
+        refreshAsync(tokenConfig).join();
+    }
+
+    /**
+     * Bulkhead: at most one refresh per token is in flight, e.g. a scheduled
+     * run joins a concurrent on-demand refresh of the same token instead of
+     * requesting a second one.
+     * 
+     * @return a future that completes once the token has been refreshed or the
+     *         refresh failed, never exceptionally
+     */
+    private CompletableFuture<Void> refreshAsync(final AccessTokenConfiguration tokenConfig) {
+        final Object tokenId = tokenConfig.getTokenId();
+        final CompletableFuture<Void> refresh = new CompletableFuture<>();
+        final CompletableFuture<Void> inFlight = inFlightRefreshes.putIfAbsent(tokenId, refresh);
+        if (inFlight != null) {
+            LOG.trace("Access token {} is already being refreshed", tokenId);
+            return inFlight;
+        }
+        startRefresh(tokenConfig).whenComplete((v, t) -> {
+            inFlightRefreshes.remove(tokenId, refresh);
+            refresh.complete(null);
+        });
+        return refresh;
+    }
+
+    private CompletableFuture<Void> startRefresh(final AccessTokenConfiguration tokenConfig) {
+        final MCB tokenBreaker = tokenBreakers.get(tokenConfig.getTokenId());
+        try {
+            final AccessToken oldToken = accessTokens.get(tokenConfig.getTokenId());
+
+            if (oldToken != null && !shouldRefresh(oldToken, configuration) && !isInvalid(oldToken)) {
+                scheduleRefresh(tokenConfig.getTokenId(), oldToken);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // a token whose own breaker is open must not take the probe of the transport breaker,
+            // tokens skipped here keep the retry installed by polling
+            if (!tokenBreaker.isClosed()) {
+                LOG.debug("{} is open, skip refresh of access token {}", tokenBreaker.getName(),
+                        tokenConfig.getTokenId());
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!mcb.isClosed()) {
+                tokenBreaker.release();
+                breakerOpen = true;
+                LOG.debug("{} is open, skip refresh of access token {}", mcb.getName(), tokenConfig.getTokenId());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            final TokenBucket rateLimit = configuration.getTokenEndpointRateLimit();
+            if (rateLimit != null && !rateLimit.tryAcquire()) {
+                tokenBreaker.release();
+                mcb.release();
+                onThrottled(tokenConfig.getTokenId(), rateLimit);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            LOG.trace("Refreshing access token {}...", tokenConfig.getTokenId());
+            refreshAttempts.increment();
+            final long start = System.nanoTime();
+            CompletableFuture<AccessToken> refresh;
+            try {
+                refresh = createTokenAsync(tokenConfig);
+            } catch (Throwable t) {
+                refresh = CompletableFuture.failedFuture(t);
+            }
+            return refresh.handle((newToken, t) -> {
+                final long nanos = System.nanoTime() - start;
+                if (t == null) {
+                    onRefreshed(tokenConfig, oldToken, newToken, nanos);
+                } else {
+                    onRefreshFailed(tokenConfig, oldToken, unwrap(t), nanos);
+                }
+                return null;
+            });
+        } catch (Throwable t) {
+            tokenBreaker.release();
+            mcb.onError();
+            LOG.warn("Unexpected problem during token refresh run! TokenId: " + tokenConfig.getTokenId(), t);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Retry as soon as the rate limit allows, instead of after the
+     * <i>scheduling period</i>.
+     */
+    private void onThrottled(final Object tokenId, final TokenBucket rateLimit) {
+        final long delay = Math.max(1, NANOSECONDS.toMillis(rateLimit.nanosUntilPermit()));
+        LOG.debug("Refresh of access token {} throttled by {}, retry in {} ms", tokenId, rateLimit, delay);
+        refreshThrottled.increment();
+        refreshSchedule.schedule(tokenId, System.currentTimeMillis() + delay);
+        scheduleNextRun();
+    }
+
+    private void onRefreshed(final AccessTokenConfiguration tokenConfig, final AccessToken oldToken,
+            final AccessToken newToken, final long nanos) {
+        try {
+            // validate
+            Objects.notNull("newToken", newToken);
+            accessTokens.put(tokenConfig.getTokenId(), newToken);
+            signalReady(tokenConfig.getTokenId());
+            if (oldToken != null) {
+                invalidTokens.remove(oldToken);
+            }
+            scheduleRefresh(tokenConfig.getTokenId(), newToken);
+            grantedExpiresIn.record(newToken.getInitialValidSeconds());
+            storeSnapshotSoon();
+            tokenBreakers.get(tokenConfig.getTokenId()).onSuccess(nanos, NANOSECONDS);
+            mcb.onSuccess(nanos, NANOSECONDS);
+            LOG.info("Refreshed access token {}.", tokenConfig.getTokenId());
+        } catch (Throwable t) {
+            onRefreshFailed(tokenConfig, oldToken, t, nanos);
+        }
+    }
+
+    private void onRefreshFailed(final AccessTokenConfiguration tokenConfig, final AccessToken oldToken,
+            final Throwable t, final long nanos) {
+        if (oldToken == null || shouldWarn(oldToken, configuration)) {
+            LOG.warn("Cannot refresh access token " + tokenConfig.getTokenId(), t);
+        } else {
+            LOG.info("Cannot refresh access token {}", tokenConfig.getTokenId(), t);
+        }
+        if (AccessTokenEndpointException.isClientError(t)) {
+            // the token endpoint is fine, the request for this token is not
+            tokenBreakers.get(tokenConfig.getTokenId()).onError(nanos, NANOSECONDS);
+            mcb.onSuccess(nanos, NANOSECONDS);
         } else {
-            LOG.debug("{} is open, skip refresh", mcb.getName());
+            // says nothing about this token, let its next refresh probe again
+            tokenBreakers.get(tokenConfig.getTokenId()).release();
+            mcb.onError(nanos, NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return seconds until the current token expires, negative once expired
+     *         and -1 if there is none
+     */
+    private long secondsToExpiry(final Object tokenId) {
+        final AccessToken token = accessTokens.get(tokenId);
+        if (token == null) {
+            return -1;
         }
+        return MILLISECONDS.toSeconds(token.getValidUntilMillis() - System.currentTimeMillis());
     }
 
-    private AccessToken createToken(final AccessTokenConfiguration tokenConfig) {
+    @Override
+    public MCBState getState(final Object tokenId) {
+        final MCB tokenBreaker = tokenBreakers.get(tokenId);
+        return tokenBreaker != null ? tokenBreaker.getState() : null;
+    }
+
+    @Override
+    public MCBState getTransportState() {
+        return mcb.getState();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencySnapshots() {
+        return latencies.getLatencySnapshots();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getLatencySnapshot(final String key) {
+        return latencies.getLatencySnapshot(key);
+    }
+
+    private static Throwable unwrap(final Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    /**
+     * Schedule the next refresh of the supplied token. If the token is already
+     * due again the retry that {@link RefreshSchedule#pollDue(long, long)} put in
+     * place is kept, so short-lived tokens cannot make the refresher spin.
+     */
+    private void scheduleRefresh(final Object tokenId, final AccessToken token) {
+        final long deadline = refreshDeadline(token);
+        if (deadline > System.currentTimeMillis()) {
+            refreshSchedule.schedule(tokenId, deadline);
+        }
+    }
+
+    private CompletableFuture<AccessToken> createTokenAsync(final AccessTokenConfiguration tokenConfig) {
         final ClientCredentials clientCredentials = configuration.getClientCredentialsProvider().get();
         UserCredentials userCredentials = null;
         if (configuration.getUserCredentialsProvider() != null) {
             userCredentials = configuration.getUserCredentialsProvider().get();
         }
 
-        long start = System.currentTimeMillis();
-        boolean success = true;
-        try (final HttpProvider httpProvider = buildHttpProvider(clientCredentials, userCredentials)) {
-            return httpProvider.createToken(tokenConfig);
-        } catch (RuntimeException | IOException e) {
-            success = false;
-            throw new AccessTokenEndpointException(e.getMessage(), e);
-        } finally {
-            long diff = System.currentTimeMillis() - start;
-            metricsListener.submitToTimer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, success), diff);
+        final long start = System.nanoTime();
+        final HttpProvider httpProvider = buildHttpProvider(clientCredentials, userCredentials);
+        CompletableFuture<AccessToken> newToken;
+        try {
+            newToken = httpProvider.createTokenAsync(tokenConfig);
+        } catch (RuntimeException e) {
+            newToken = CompletableFuture.failedFuture(e);
+        }
+        return newToken.whenComplete((token, t) -> {
+            closeQuietly(httpProvider);
+            (t == null ? refreshSuccessTimer : refreshFailureTimer).recordNanos(System.nanoTime() - start);
+        });
+    }
+
+    @Override
+    public void stop() {
+        synchronized (scheduleLock) {
+            started = false;
+            if (nextRun != null) {
+                nextRun.cancel(false);
+            }
+        }
+        super.stop();
+        LOG.debug("Endpoint latencies: {}", latencies.getLatencySnapshots());
+        if (snapshot != null) {
+            snapshot.store(managedTokens());
+        }
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdown();
+        }
+        closeQuietly(verifyRunner);
+        if (ownedHttpProviderFactory != null) {
+            closeQuietly(ownedHttpProviderFactory);
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not close {}", closeable, e);
         }
     }
 
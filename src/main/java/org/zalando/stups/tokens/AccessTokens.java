@@ -15,6 +15,8 @@
  */
 package org.zalando.stups.tokens;
 
+import java.util.Optional;
+
 /**
  * Use this interface to get retrieve and invalidate access tokens after having them built using
  * {@link AccessTokensBuilder}
@@ -25,6 +27,11 @@ package org.zalando.stups.tokens;
  * If you need the full access token including issue date as well as expire time you should invoke
  * {@link AccessTokens#getAccessToken(Object)}.
  *
+ * If you have to cope with missing or expired access tokens on a hot path, e.g. while the
+ * authorization server is unavailable, use {@link AccessTokens#lookup(Object)},
+ * {@link AccessTokens#findAccessToken(Object)} or {@link AccessTokens#find(Object)} which report
+ * the absence of a token without throwing an exception.
+ *
  * If you want to invalidate a specific access token to whatever reasons you can use
  * {@link AccessTokens#invalidate(Object)}.
  *
@@ -66,6 +73,50 @@ public interface AccessTokens {
      */
     AccessToken getAccessToken(Object tokenId) throws AccessTokenUnavailableException;
 
+    /**
+     * Look up the {@link AccessToken} for the supplied <i>tokenId</i> without throwing an exception
+     * in case it is not available.
+     *
+     * @param tokenId  The <i>tokenId</i> to get the access token for. The supplied <i>tokenId</i>
+     *                 must be equal to the <i>tokenId</i> as supplied on
+     *                 {@link AccessTokensBuilder#manageToken(Object)} with respect to
+     *                 {@link Object#equals(Object)}.
+     * @return An {@link AccessTokenLookup} telling whether the access token is available, missing
+     * or expired. The return value will always be a non null value.
+     */
+    default AccessTokenLookup lookup(Object tokenId) {
+        try {
+            return AccessTokenLookup.available(getAccessToken(tokenId));
+        } catch (AccessTokenUnavailableException e) {
+            return AccessTokenLookup.missing();
+        }
+    }
+
+    /**
+     * Get a full {@link AccessToken} for the supplied <i>tokenId</i> if one is available.
+     *
+     * @param tokenId  The <i>tokenId</i> to get the access token for, see
+     *                 {@link AccessTokens#lookup(Object)}.
+     * @return The {@link AccessToken} for the supplied <i>tokenId</i> or {@link Optional#empty()}
+     * in case it is missing or expired.
+     */
+    default Optional<AccessToken> findAccessToken(Object tokenId) {
+        return lookup(tokenId).toOptional();
+    }
+
+    /**
+     * Get a {@link String} representation of the access token for the supplied <i>tokenId</i> if
+     * one is available.
+     *
+     * @param tokenId  The <i>tokenId</i> to get the access token for, see
+     *                 {@link AccessTokens#lookup(Object)}.
+     * @return The access token for the supplied <i>tokenId</i> or {@link Optional#empty()} in case
+     * it is missing or expired.
+     */
+    default Optional<String> find(Object tokenId) {
+        return findAccessToken(tokenId).map(AccessToken::getToken);
+    }
+
     /**
      * Invalidate the current {@link AccessToken} stored for the supplied <i>tokenId</i>. This will
      * cause {@link AccessTokens#get(Object)} and {@link AccessTokens#getAccessToken(Object)} to
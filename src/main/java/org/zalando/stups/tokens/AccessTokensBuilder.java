@@ -27,11 +27,14 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.crypto.SecretKey;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.stups.tokens.fs.FilesystemSecretRefresher;
 import org.zalando.stups.tokens.fs.FilesystemSecretsRefresherConfiguration;
 import org.zalando.stups.tokens.mcb.MCBConfig;
+import org.zalando.stups.tokens.util.TokenBucket;
 
 /**
  * Use the <i>AccessTokensBuilder</i> obtained via
@@ -57,13 +60,17 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
     private ClientCredentialsProvider clientCredentialsProvider = null;
     private UserCredentialsProvider userCredentialsProvider = null;
     private int refreshPercentLeft = 40;
+    private int refreshJitterPercent = 0;
     private int warnPercentLeft = 20;
+    private int refreshParallelism = 1;
+    private long onDemandRefreshTimeoutMillis = 0;
 
     private final HttpConfig httpConfig = new HttpConfig();
     private final Set<AccessTokenConfiguration> accessTokenConfigurations = new HashSet<>();
 
     private boolean locked = false;
     private HttpProviderFactory httpProviderFactory;
+    private boolean ownsHttpProviderFactory = false;
     private int schedulingPeriod = 5;
     private TimeUnit schedulingTimeUnit = TimeUnit.SECONDS;
     private ScheduledExecutorService executorService;
@@ -74,6 +81,14 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
 
     private MCBConfig tokenRefresherMcbConfig = new MCBConfig.Builder().build();
 
+    private TokenBucket tokenEndpointRateLimit;
+
+    private TokenBucket tokenInfoRateLimit;
+
+    private File tokenSnapshotFile;
+
+    private SecretKey tokenSnapshotKey;
+
     private MCBConfig tokenVerifierMcbConfig = new MCBConfig.Builder().withErrorThreshold(3).withMaxMulti(4)
             .withTimeout(10).withTimeUnit(TimeUnit.MINUTES).build();
 
@@ -148,7 +163,9 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
      * @param factory
      *            Your implementation of the {@link HttpProviderFactory} to use.
      *            See {@link ClosableHttpProviderFactory} for a potential
-     *            implementation.
+     *            implementation or {@link JdkHttpProviderFactory} for a
+     *            non-blocking one. It is not closed on
+     *            {@link AccessTokens#stop()}, so it may be shared.
      * @return The same {@link AccessTokensBuilder} instance this method has
      *         been called upon with the supplied {@link HttpProviderFactory}
      *         set.
@@ -167,7 +184,8 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
      * @param tokenVerifierProvider
      *            Your implementation of the {@link TokenVerifierProvider} to
      *            user. See {@link CloseableTokenVerifierProvider} for a
-     *            potential implementation.
+     *            potential implementation or {@link JdkTokenVerifierProvider}
+     *            for a non-blocking one.
      * @return The same {@link AccessTokensBuilder} instance this method has
      *         been called upon with the supplied {@link TokenVerifierProvider}
      *         set.
@@ -178,6 +196,27 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Request tokens and verify them with the non-blocking HttpClient of the
+     * JDK instead of Apache HttpClient. One client is shared by token and
+     * tokeninfo requests and multiplexes them over a single HTTP/2 connection
+     * per endpoint where the server supports it. Replaces any
+     * {@link HttpProviderFactory} or {@link TokenVerifierProvider} configured
+     * before.
+     *
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with a shared {@link JdkHttpProviderFactory}
+     *         set as {@link HttpProviderFactory} and
+     *         {@link TokenVerifierProvider}.
+     */
+    public AccessTokensBuilder usingJdkHttpClient() {
+        checkLock();
+        final JdkHttpProviderFactory factory = new JdkHttpProviderFactory();
+        this.httpProviderFactory = factory;
+        this.tokenVerifierProvider = factory;
+        return this;
+    }
+
     /**
      * Change the socket timeout in milliseconds to be used for HTTP
      * connections. Default value is 2000.
@@ -267,6 +306,22 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Change the maximum number of pooled HTTP connections kept to the token
+     * endpoint. Default value is 10. The pool is raised to at least the
+     * configured <i>refresh parallelism</i> on start.
+     *
+     * @param maxConnections
+     *            Your desired maximum number of pooled connections
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied <i>max connections</i> set.
+     */
+    public AccessTokensBuilder maxConnections(final int maxConnections) {
+        checkLock();
+        this.httpConfig.setMaxConnections(maxConnections);
+        return this;
+    }
+
     /**
      * Set the threshold of the validity time left before the service tries to
      * refresh an access token with the authorization server. Default value is
@@ -285,6 +340,31 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Spread the refreshes of a fleet of instances that fetched their tokens at
+     * the same time. Each access token is refreshed somewhere between
+     * <i>refresh percentage left</i> plus the supplied jitter and <i>refresh
+     * percentage left</i>, e.g. between 60% and 40% left with a jitter of 20.
+     * The point is derived from the token itself, so it does not move between
+     * runs. Default value is 0, i.e. all instances refresh at exactly
+     * <i>refresh percentage left</i>.
+     *
+     * @param refreshJitterPercent
+     *            The percentage of validity time the refresh may happen
+     *            earlier than <i>refresh percentage left</i>
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied <i>refresh jitter
+     *         percentage</i> set.
+     */
+    public AccessTokensBuilder refreshJitterPercent(final int refreshJitterPercent) {
+        checkLock();
+        if (refreshJitterPercent < 0 || refreshJitterPercent > 100) {
+            throw new IllegalArgumentException("'refreshJitterPercent' should be between 0 and 100");
+        }
+        this.refreshJitterPercent = refreshJitterPercent;
+        return this;
+    }
+
     /**
      * Set the threshold of the validity time left before the service issues a
      * warning. This value can be used to detect possible access token
@@ -302,6 +382,57 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Set the maximum number of access tokens that are refreshed concurrently
+     * within one refresh run. With the default value of 1 all managed tokens
+     * are refreshed one after another, so a refresh run takes the number of
+     * tokens due times the latency of the token endpoint. Higher values fan
+     * out the requests to the token endpoint using a dedicated thread pool of
+     * the supplied size.
+     *
+     * @param refreshParallelism
+     *            The maximum number of concurrent token refreshes, must be at
+     *            least 1
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied <i>refresh parallelism</i>
+     *         set.
+     */
+    public AccessTokensBuilder refreshParallelism(final int refreshParallelism) {
+        checkLock();
+        if (refreshParallelism < 1) {
+            throw new IllegalArgumentException("refreshParallelism should be at least 1");
+        }
+        this.refreshParallelism = refreshParallelism;
+        return this;
+    }
+
+    /**
+     * Let {@link AccessTokens#get(Object)} and
+     * {@link AccessTokens#getAccessToken(Object)} refresh a missing (e.g.
+     * invalidated) or expired access token right away instead of failing until
+     * the next scheduled refresh. All callers asking for the same
+     * <i>tokenId</i> at the same time share one request to the token endpoint
+     * and wait at most the supplied <i>timeout</i> for it. Disabled by
+     * default.
+     *
+     * @param timeout
+     *            The maximum time a caller waits for the on-demand refresh,
+     *            must be positive
+     * @param timeUnit
+     *            The {@link TimeUnit} of the supplied <i>timeout</i>
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with on-demand refreshing enabled.
+     */
+    public AccessTokensBuilder refreshOnDemand(final long timeout, final TimeUnit timeUnit) {
+        checkLock();
+        notNull("timeUnit", timeUnit);
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout should be positive");
+        }
+        this.onDemandRefreshTimeoutMillis = timeUnit.toMillis(timeout);
+        return this;
+    }
+
     /**
      * Configure a new access token configuration that should be managed by the
      * returned {@link AccessTokens} implementation. You can manage multiple
@@ -333,8 +464,12 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
     }
 
     /**
-     * Configure the amount of time between two runs of checking which existing
-     * access tokens should be refreshed. This method must be used together with
+     * Configure the amount of time after which a failed refresh of an access
+     * token is retried and, while the circuit breaker is open, the refresh is
+     * attempted again. Access tokens are refreshed as soon as they reach the
+     * <i>refresh percentage left</i>, independent of this value. When using
+     * filesystem secrets this is the time between two reads of the
+     * credentials directory. This method must be used together with
      * {@link AccessTokensBuilder#schedulingTimeUnit(TimeUnit)} to define the
      * scheduling. The meaning of the value supplied here depends on the setting
      * for the {@link TimeUnit}. Default value is set to 5.
@@ -352,8 +487,8 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
 
     /**
      * Configure the {@link TimeUnit} used together with the configured
-     * <i>scheduling period</i> to use for checking which access tokens should
-     * be refreshed. Default value is {@link TimeUnit#SECONDS}
+     * <i>scheduling period</i> to use for retrying access token refreshes.
+     * Default value is {@link TimeUnit#SECONDS}
      *
      * @param timeUnit
      *            The {@link TimeUnit} to use together with the configured
@@ -452,6 +587,79 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Limit the requests to the token endpoint, e.g. to protect the
+     * authorization server from invalidation loops. Refreshes beyond the limit
+     * are postponed until a permit is available and counted as
+     * <i>tokens.refresher.throttled</i> through the {@link MetricsListener}.
+     * Allow a burst of at least the number of managed tokens, otherwise the
+     * initial fetch is throttled as well. Unlimited by default.
+     *
+     * @param permitsPerSecond
+     *            The sustained rate of requests, must be positive
+     * @param burst
+     *            The number of requests that may be issued at once after a
+     *            quiet period, must be positive
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied rate limit set.
+     */
+    public AccessTokensBuilder tokenEndpointRateLimit(final double permitsPerSecond, final int burst) {
+        checkLock();
+        this.tokenEndpointRateLimit = new TokenBucket(permitsPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Limit the requests of the configured {@link TokenVerifier}, e.g. to the
+     * tokeninfo endpoint. Verifications beyond the limit are skipped until the
+     * next verification run and counted as <i>tokens.verifier.throttled</i>
+     * through the {@link MetricsListener}. Unlimited by default.
+     *
+     * @param permitsPerSecond
+     *            The sustained rate of requests, must be positive
+     * @param burst
+     *            The number of requests that may be issued at once after a
+     *            quiet period, must be positive
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied rate limit set.
+     */
+    public AccessTokensBuilder tokenInfoRateLimit(final double permitsPerSecond, final int burst) {
+        checkLock();
+        this.tokenInfoRateLimit = new TokenBucket(permitsPerSecond, burst);
+        return this;
+    }
+
+    /**
+     * Keep the still valid tokens in a snapshot file encrypted with AES-GCM,
+     * written whenever a token has been refreshed and on stop. On start the
+     * tokens of the snapshot are served right away and only those that are
+     * due are fetched, e.g. to avoid a burst of requests to the token
+     * endpoint on rolling deploys. A snapshot that cannot be decrypted is
+     * ignored. Disabled by default.
+     *
+     * @param file
+     *            The snapshot file, its directory must exist and be writable,
+     *            renaming the file invalidates the snapshot
+     * @param key
+     *            The AES key with 128, 192 or 256 bits, e.g. a
+     *            {@link javax.crypto.spec.SecretKeySpec} from a secret of the
+     *            deployment, never stored with the snapshot
+     * @return The same {@link AccessTokensBuilder} instance this method has
+     *         been called upon with the supplied snapshot set.
+     */
+    public AccessTokensBuilder tokenSnapshot(final File file, final SecretKey key) {
+        checkLock();
+        notNull("key", key);
+        if (!"AES".equalsIgnoreCase(key.getAlgorithm()) || key.getEncoded() == null
+                || (key.getEncoded().length != 16 && key.getEncoded().length != 24
+                        && key.getEncoded().length != 32)) {
+            throw new IllegalArgumentException("'key' should be an AES key with 128, 192 or 256 bits");
+        }
+        this.tokenSnapshotFile = notNull("file", file);
+        this.tokenSnapshotKey = key;
+        return this;
+    }
+
     /**
      * Configure the {@link MetricsListener} to be used by the created
      * {@link AccessTokens} implementation for reporting execution times.
@@ -493,6 +701,14 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return this.httpProviderFactory;
     }
 
+    /**
+     * @return whether the {@link HttpProviderFactory} has been created by this
+     *         builder instead of being supplied, so it is closed on stop
+     */
+    boolean ownsHttpProviderFactory() {
+        return ownsHttpProviderFactory;
+    }
+
     @Override
     public ClientCredentialsProvider getClientCredentialsProvider() {
         return clientCredentialsProvider;
@@ -508,6 +724,21 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return refreshPercentLeft;
     }
 
+    @Override
+    public int getRefreshJitterPercent() {
+        return refreshJitterPercent;
+    }
+
+    @Override
+    public int getRefreshParallelism() {
+        return refreshParallelism;
+    }
+
+    @Override
+    public long getOnDemandRefreshTimeoutMillis() {
+        return onDemandRefreshTimeoutMillis;
+    }
+
     @Override
     public ScheduledExecutorService getExecutorService() {
         if (executorService == null) {
@@ -567,6 +798,30 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return refresher;
     }
 
+    /**
+     * Like {@link #start()}, but returns right away instead of waiting for
+     * the tokens to be fetched, so the time to start does not grow with the
+     * number of managed tokens. They are fetched in the background, up to
+     * {@link #maxConnections(int)} at the same time, so as long as there are
+     * no more tokens than connections the time until all are ready does not
+     * grow with their number either. Later refreshes run up to
+     * {@link #refreshParallelism(int)} at a time.
+     *
+     * Until a token is available {@link AccessTokens#get(Object)} throws an
+     * {@link AccessTokenUnavailableException} (or waits for an on-demand
+     * refresh, see {@link #refreshOnDemand(long, TimeUnit)}). Use
+     * {@link AsyncAccessTokens#whenReady(Object)} or
+     * {@link AsyncAccessTokens#awaitReady(long, TimeUnit)} to wait for them
+     * when needed.
+     *
+     * @return The started {@link AsyncAccessTokens} instance
+     */
+    public AsyncAccessTokens startAsync() {
+        final AbstractAccessTokenRefresher refresher = getAccessTokenRefresher();
+        refresher.startAsync();
+        return refresher;
+    }
+
     @Override
     public HttpConfig getHttpConfig() {
         return httpConfig;
@@ -598,6 +853,11 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
 
         if (httpProviderFactory == null) {
             this.httpProviderFactory = new ClosableHttpProviderFactory();
+            this.ownsHttpProviderFactory = true;
+        }
+
+        if (httpConfig.getMaxConnections() < refreshParallelism) {
+            httpConfig.setMaxConnections(refreshParallelism);
         }
 
         return new AccessTokenRefresher(this);
@@ -628,6 +888,26 @@ public class AccessTokensBuilder implements TokenRefresherConfiguration {
         return tokenVerifierMcbConfig;
     }
 
+    @Override
+    public TokenBucket getTokenEndpointRateLimit() {
+        return tokenEndpointRateLimit;
+    }
+
+    @Override
+    public TokenBucket getTokenInfoRateLimit() {
+        return tokenInfoRateLimit;
+    }
+
+    @Override
+    public File getTokenSnapshotFile() {
+        return tokenSnapshotFile;
+    }
+
+    @Override
+    public SecretKey getTokenSnapshotKey() {
+        return tokenSnapshotKey;
+    }
+
     @Override
     public MetricsListener getMetricsListener() {
         return metricsListener;
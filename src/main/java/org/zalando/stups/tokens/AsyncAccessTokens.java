@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AccessTokens} that tell when their tokens become available, e.g.
+ * after {@link AccessTokensBuilder#startAsync()} returned before any token has
+ * been fetched.
+ * 
+ * <pre>
+ * AsyncAccessTokens tokens = Tokens.createAccessTokensWithUri(uri).manageToken("example").done().startAsync();
+ * // ... initialize the rest of the application ...
+ * if (!tokens.awaitReady(10, TimeUnit.SECONDS)) {
+ *     // not every token could be fetched yet, refreshes are retried in the background
+ * }
+ * </pre>
+ */
+public interface AsyncAccessTokens extends AccessTokens {
+
+    /**
+     * @param tokenId
+     *            The <i>tokenId</i> as supplied on
+     *            {@link AccessTokensBuilder#manageToken(Object)}
+     * @return A future completed with the first valid {@link AccessToken} for
+     *         the supplied <i>tokenId</i>. It stays incomplete while fetching
+     *         fails and is completed exceptionally with an
+     *         {@link AccessTokenUnavailableException} on {@link #stop()}.
+     *         Later refreshes are not reflected, use
+     *         {@link #getAccessToken(Object)} to get the current one.
+     */
+    CompletableFuture<AccessToken> whenReady(Object tokenId);
+
+    /**
+     * Wait until a valid {@link AccessToken} is available for every managed
+     * <i>tokenId</i>.
+     *
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of the <i>timeout</i>
+     * @return <i>true</i> if all tokens are available, <i>false</i> if the
+     *         timeout elapsed or the instance has been stopped before
+     * @throws InterruptedException
+     *             if the current thread has been interrupted while waiting
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import org.zalando.stups.tokens.mcb.MCBState;
+
+/**
+ * Circuit breaker states of an {@link AccessTokens} instance that refreshes
+ * tokens from a token endpoint. Each <i>tokenId</i> has its own breaker, which
+ * opens on errors that concern that token only (e.g. a 400 for an unknown
+ * scope). Transport errors, server errors and throttling open the breaker
+ * shared by all tokens.
+ * 
+ * <pre>
+ * if (accessTokens instanceof CircuitBreakers) {
+ *     MCBState state = ((CircuitBreakers) accessTokens).getState("my-token");
+ * }
+ * </pre>
+ */
+public interface CircuitBreakers {
+
+    /**
+     * Return the state of the breaker for the given tokenId.
+     * 
+     * @param tokenId
+     *            The <i>tokenId</i> as supplied on
+     *            {@link AccessTokensBuilder#manageToken(Object)}
+     * @return The {@link MCBState} of the breaker of that <i>tokenId</i>, or
+     *         <i>null</i> if the <i>tokenId</i> is not configured
+     */
+    MCBState getState(Object tokenId);
+
+    /**
+     * Return the state of the breaker shared by all tokens.
+     *
+     * @return The {@link MCBState} of the breaker for transport errors, server
+     *         errors and throttling of the token endpoint
+     */
+    MCBState getTransportState();
+
+}
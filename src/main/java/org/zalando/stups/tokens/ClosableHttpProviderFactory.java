@@ -15,14 +15,93 @@
  */
 package org.zalando.stups.tokens;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Creates {@link CloseableHttpProvider}s that share pooled
+ * {@link CloseableHttpClient}s. Connections (and with them TLS sessions) to the
+ * token endpoint are kept alive and reused across refreshes and
+ * <i>tokenId</i>s instead of being set up for every single request.
+ *
+ * Providers whose {@link HttpConfig}s agree on the pool settings
+ * ({@link HttpConfig#getMaxConnections()} and
+ * {@link HttpConfig#isStaleConnectionCheckEnabled()}) share one client, the
+ * timeouts are applied per request. The shared clients are created on first
+ * use and released by {@link #close()}.
+ */
+public class ClosableHttpProviderFactory implements HttpProviderFactory, Closeable {
+
+    private static final long MAX_KEEP_ALIVE_MILLIS = SECONDS.toMillis(30);
+
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+        final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return keepAlive > 0 ? Math.min(keepAlive, MAX_KEEP_ALIVE_MILLIS) : MAX_KEEP_ALIVE_MILLIS;
+    };
+
+    private final Map<List<Object>, CloseableHttpClient> clients = new HashMap<>();
 
-public class ClosableHttpProviderFactory implements HttpProviderFactory {
     @Override
     public HttpProvider create(ClientCredentials clientCredentials,
                                UserCredentials userCredentials,
                                URI accessTokenUri,
                                HttpConfig httpConfig) {
-        return new CloseableHttpProvider(clientCredentials, userCredentials, accessTokenUri, httpConfig);
+        return new CloseableHttpProvider(getClient(httpConfig), clientCredentials, userCredentials, accessTokenUri,
+                httpConfig);
+    }
+
+    protected synchronized CloseableHttpClient getClient(HttpConfig httpConfig) {
+        final List<Object> poolSettings = Arrays.asList(httpConfig.getMaxConnections(),
+                httpConfig.isStaleConnectionCheckEnabled());
+        return clients.computeIfAbsent(poolSettings, key -> createClient(httpConfig));
+    }
+
+    //@formatter:off
+    protected CloseableHttpClient createClient(HttpConfig httpConfig) {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(httpConfig.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(httpConfig.getMaxConnections());
+        if (httpConfig.isStaleConnectionCheckEnabled()) {
+            connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        }
+
+        return HttpClients.custom()
+                          .setUserAgent(HttpProvider.USER_AGENT.get())
+                          .useSystemProperties()
+                          .setConnectionManager(connectionManager)
+                          .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+                          .build();
+    }
+    //@formatter:on
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (final CloseableHttpClient client : clients.values()) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        clients.clear();
+        if (failure != null) {
+            throw failure;
+        }
     }
 }
@@ -50,16 +50,39 @@ public class CloseableHttpProvider extends AbstractHttpProvider {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private final CloseableHttpClient client;
+    private final boolean ownsClient;
     private final HttpClientContext localContext;
     private UserCredentials userCredentials;
     private URI accessTokenUri;
     private final HttpHost host;
     private final RequestConfig requestConfig;
 
-    //@formatter:off
+    /**
+     * Creates a provider with its own {@link CloseableHttpClient} that will be
+     * closed together with this provider.
+     */
     public CloseableHttpProvider(ClientCredentials clientCredentials, UserCredentials userCredentials,
             URI accessTokenUri, HttpConfig httpConfig) {
+        this(HttpClients.custom().setUserAgent(USER_AGENT.get()).useSystemProperties().build(), true,
+                clientCredentials, userCredentials, accessTokenUri, httpConfig);
+    }
+
+    /**
+     * Creates a provider using the supplied, shared {@link CloseableHttpClient}.
+     * Closing this provider will not close the client, its lifecycle is up to
+     * the caller.
+     */
+    public CloseableHttpProvider(CloseableHttpClient client, ClientCredentials clientCredentials,
+            UserCredentials userCredentials, URI accessTokenUri, HttpConfig httpConfig) {
+        this(client, false, clientCredentials, userCredentials, accessTokenUri, httpConfig);
+    }
 
+    //@formatter:off
+    private CloseableHttpProvider(CloseableHttpClient client, boolean ownsClient, ClientCredentials clientCredentials,
+            UserCredentials userCredentials, URI accessTokenUri, HttpConfig httpConfig) {
+
+        this.client = client;
+        this.ownsClient = ownsClient;
         this.userCredentials = userCredentials;
         this.accessTokenUri = accessTokenUri;
 
@@ -70,17 +93,11 @@ public class CloseableHttpProvider extends AbstractHttpProvider {
                                      .setStaleConnectionCheckEnabled(httpConfig.isStaleConnectionCheckEnabled())
                                      .build();
 
-        // prepare basic auth credentials
+        // prepare basic auth credentials, bound to this provider only as the client may be shared
         final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
         credentialsProvider.setCredentials(new AuthScope(accessTokenUri.getHost(), accessTokenUri.getPort()),
                 new UsernamePasswordCredentials(clientCredentials.getId(), clientCredentials.getSecret()));
 
-        client = HttpClients.custom()
-                            .setUserAgent(USER_AGENT.get())
-                            .useSystemProperties()
-                            .setDefaultCredentialsProvider(credentialsProvider)
-                            .build();
-
         host = new HttpHost(accessTokenUri.getHost(), accessTokenUri.getPort(), accessTokenUri.getScheme());
 
         // enable basic auth for the request
@@ -89,6 +106,7 @@ public class CloseableHttpProvider extends AbstractHttpProvider {
         authCache.put(host, basicAuth);
 
         localContext = HttpClientContext.create();
+        localContext.setCredentialsProvider(credentialsProvider);
         localContext.setAuthCache(authCache);
     }
     //@formatter:on
@@ -135,6 +153,8 @@ public class CloseableHttpProvider extends AbstractHttpProvider {
 
     @Override
     public void close() throws IOException {
-        client.close();
+        if (ownsClient) {
+            client.close();
+        }
     }
 }
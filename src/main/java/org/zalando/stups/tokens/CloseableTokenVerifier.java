@@ -49,11 +49,14 @@ class CloseableTokenVerifier implements TokenVerifier {
     private final CloseableHttpClient client;
     private URI tokenInfoUri;
     private final HttpHost host;
-    private final MetricsListener metricsListener;
+    private final MetricsListener.Timer successTimer;
+    private final MetricsListener.Timer failureTimer;
 
     public CloseableTokenVerifier(URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener) {
         this.tokenInfoUri = tokenInfoUri;
-        this.metricsListener = metricsListener;
+        final MetricsListener metrics = MetricHandles.orNoop(metricsListener);
+        this.successTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, true));
+        this.failureTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, false));
 
         requestConfig = RequestConfig.custom().setSocketTimeout(httpConfig.getSocketTimeout())
                 .setConnectTimeout(httpConfig.getConnectTimeout())
@@ -78,7 +81,7 @@ class CloseableTokenVerifier implements TokenVerifier {
         request.setHeader(AUTHORIZATION, "Bearer " + token);
         request.setConfig(requestConfig);
 
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         boolean success = true;
         try (final CloseableHttpResponse response = client.execute(host, request)) {
 
@@ -102,8 +105,7 @@ class CloseableTokenVerifier implements TokenVerifier {
             success = false;
             return true;
         } finally {
-            long time = System.currentTimeMillis() - start;
-            metricsListener.submitToTimer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, success), time);
+            (success ? successTimer : failureTimer).recordNanos(System.nanoTime() - start);
         }
         return true;
     }
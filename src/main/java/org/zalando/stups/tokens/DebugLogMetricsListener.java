@@ -35,4 +35,18 @@ class DebugLogMetricsListener implements MetricsListener {
         }
     }
 
+    @Override
+    public void submitToCounter(String key, long delta) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} increased by {}", key, delta);
+        }
+    }
+
+    @Override
+    public void submitToHistogram(String key, long value) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} recorded {}", key, value);
+        }
+    }
+
 }
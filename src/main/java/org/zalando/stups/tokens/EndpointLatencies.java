@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.util.Map;
+
+import org.zalando.stups.tokens.util.LatencyHistogram;
+
+/**
+ * Latencies of the calls to the token endpoint and the token info endpoint
+ * of an {@link AccessTokens} instance, kept in-process since it has been
+ * started. The keys are those of the timers reported to the
+ * {@link MetricsListener}, e.g. <i>tokens.refresher.success</i> or
+ * <i>tokens.verifier.failure</i>.
+ * 
+ * <pre>
+ * if (accessTokens instanceof EndpointLatencies) {
+ *     LatencyHistogram.Snapshot refreshes = ((EndpointLatencies) accessTokens)
+ *             .getLatencySnapshot("tokens.refresher.success");
+ *     long p99Nanos = refreshes.getP99();
+ * }
+ * </pre>
+ */
+public interface EndpointLatencies {
+
+    /**
+     * @return a snapshot of every latency histogram by key, values in
+     *         nanoseconds
+     */
+    Map<String, LatencyHistogram.Snapshot> getLatencySnapshots();
+
+    /**
+     * @return a snapshot of the latency histogram with the given key or null
+     *         if there is none
+     */
+    default LatencyHistogram.Snapshot getLatencySnapshot(String key) {
+        return getLatencySnapshots().get(key);
+    }
+
+}
@@ -33,6 +33,8 @@ public class HttpConfig {
 
     private boolean staleConnectionCheckEnabled = true;
 
+    private int maxConnections = 10;
+
     /**
      * @see RequestConfig#getSocketTimeout()
      * 
@@ -85,4 +87,17 @@ public class HttpConfig {
         this.staleConnectionCheckEnabled = staleConnectionCheckEnabled;
     }
 
+    /**
+     * @see org.apache.http.impl.conn.PoolingHttpClientConnectionManager#setMaxTotal(int)
+     * 
+     * @return maximum number of pooled connections to the token endpoint, defaults to 10
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
 }
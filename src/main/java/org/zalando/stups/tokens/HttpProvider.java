@@ -17,10 +17,30 @@ package org.zalando.stups.tokens;
 
 import java.io.Closeable;
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.CompletableFuture;
 
 public interface HttpProvider extends Closeable {
 
     static final UserAgent USER_AGENT = new UserAgent();
 
     AccessToken createToken(final AccessTokenConfiguration tokenConfig) throws UnsupportedEncodingException;
+
+    /**
+     * Non-blocking variant of {@link #createToken(AccessTokenConfiguration)}.
+     * The default implementation calls the blocking method on the calling
+     * thread, implementations backed by a non-blocking client (see
+     * {@link JdkHttpProvider}) should override it.
+     *
+     * @param tokenConfig
+     *            the configuration of the token to create
+     * @return a future completed with the new {@link AccessToken} or
+     *         exceptionally if the token could not be created
+     */
+    default CompletableFuture<AccessToken> createTokenAsync(final AccessTokenConfiguration tokenConfig) {
+        try {
+            return CompletableFuture.completedFuture(createToken(tokenConfig));
+        } catch (Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+    }
 }
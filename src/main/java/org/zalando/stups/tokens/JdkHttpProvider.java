@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@link HttpProvider} backed by the non-blocking {@link HttpClient} of the
+ * JDK. {@link #createTokenAsync(AccessTokenConfiguration)} does not block the
+ * calling thread, so many token requests can be in flight at the same time.
+ */
+public class JdkHttpProvider extends AbstractHttpProvider {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpClient client;
+    private final UserCredentials userCredentials;
+    private final URI accessTokenUri;
+    private final String authorization;
+    private final Duration timeout;
+
+    public JdkHttpProvider(HttpClient client, ClientCredentials clientCredentials, UserCredentials userCredentials,
+            URI accessTokenUri, HttpConfig httpConfig) {
+        this.client = client;
+        this.userCredentials = userCredentials;
+        this.accessTokenUri = accessTokenUri;
+
+        final String credentials = clientCredentials.getId() + ":" + clientCredentials.getSecret();
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(UTF_8));
+        this.timeout = requestTimeout(httpConfig);
+    }
+
+    /**
+     * The JDK client has no separate socket timeout, so the whole exchange is
+     * bounded by connect and socket timeout together.
+     */
+    static Duration requestTimeout(HttpConfig httpConfig) {
+        if (httpConfig.getSocketTimeout() <= 0) {
+            return null;
+        }
+        return Duration.ofMillis((long) Math.max(0, httpConfig.getConnectTimeout()) + httpConfig.getSocketTimeout());
+    }
+
+    @Override
+    public AccessToken createToken(final AccessTokenConfiguration tokenConfig) {
+        try {
+            return createTokenAsync(tokenConfig).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AccessTokenEndpointException) {
+                throw (AccessTokenEndpointException) e.getCause();
+            }
+            throw new AccessTokenEndpointException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    //@formatter:off
+    @Override
+    public CompletableFuture<AccessToken> createTokenAsync(final AccessTokenConfiguration tokenConfig) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(accessTokenUri)
+                                                       .header("Authorization", authorization)
+                                                       .header("Content-Type", "application/x-www-form-urlencoded")
+                                                       .header("Accept", "application/json")
+                                                       .header("User-Agent", USER_AGENT.get())
+                                                       .POST(HttpRequest.BodyPublishers.ofString(formEncode(tokenConfig)));
+        if (timeout != null) {
+            request.timeout(timeout);
+        }
+
+        return client.sendAsync(request.build(), BodyHandlers.ofByteArray())
+                     .thenApply(this::toAccessToken);
+    }
+    //@formatter:on
+
+    private String formEncode(final AccessTokenConfiguration tokenConfig) {
+        final StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, String> entry : buildParameterMap(tokenConfig, userCredentials).entrySet()) {
+            if (form.length() > 0) {
+                form.append('&');
+            }
+            form.append(URLEncoder.encode(entry.getKey(), UTF_8));
+            // like the Apache client, e.g. for NoopUserCredentials
+            if (entry.getValue() != null) {
+                form.append('=').append(URLEncoder.encode(entry.getValue(), UTF_8));
+            }
+        }
+        return form.toString();
+    }
+
+    private AccessToken toAccessToken(final HttpResponse<byte[]> response) {
+        final int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            throw AccessTokenEndpointException.from(status, new String(response.body(), UTF_8));
+        }
+
+        try {
+            final AccessTokenResponse accessTokenResponse = OBJECT_MAPPER.readValue(response.body(),
+                    AccessTokenResponse.class);
+            final Date validUntil = calculateValidUntil(accessTokenResponse);
+
+            return new AccessToken(accessTokenResponse.getAccessToken(), accessTokenResponse.getTokenType(),
+                    accessTokenResponse.getExpiresInSeconds(), validUntil);
+        } catch (IOException e) {
+            throw new AccessTokenEndpointException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The {@link HttpClient} is shared and owned by the factory, nothing to
+     * release here.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Creates {@link JdkHttpProvider}s and {@link TokenVerifier}s that all share
+ * one non-blocking JDK {@link HttpClient}, created on first use. The client
+ * prefers HTTP/2, so all token and tokeninfo requests to an endpoint are
+ * multiplexed over a single connection instead of one connection per
+ * concurrent request. Servers that do not support HTTP/2 are talked to with
+ * HTTP/1.1.
+ *
+ * @see AccessTokensBuilder#usingJdkHttpClient()
+ */
+public class JdkHttpProviderFactory implements HttpProviderFactory, TokenVerifierProvider {
+
+    private HttpClient client;
+
+    @Override
+    public HttpProvider create(ClientCredentials clientCredentials,
+                               UserCredentials userCredentials,
+                               URI accessTokenUri,
+                               HttpConfig httpConfig) {
+        return new JdkHttpProvider(getClient(httpConfig), clientCredentials, userCredentials, accessTokenUri,
+                httpConfig);
+    }
+
+    @Override
+    public TokenVerifier create(URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener) {
+        return new JdkTokenVerifier(getClient(httpConfig), tokenInfoUri, httpConfig, metricsListener);
+    }
+
+    protected synchronized HttpClient getClient(HttpConfig httpConfig) {
+        if (client == null) {
+            client = createClient(httpConfig);
+        }
+        return client;
+    }
+
+    protected HttpClient createClient(HttpConfig httpConfig) {
+        return newClient(httpConfig);
+    }
+
+    static HttpClient newClient(HttpConfig httpConfig) {
+        final HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+        if (httpConfig.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(httpConfig.getConnectTimeout()));
+        }
+        return builder.build();
+    }
+}
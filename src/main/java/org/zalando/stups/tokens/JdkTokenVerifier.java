@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.zalando.stups.tokens.util.Metrics;
+
+/**
+ * {@link TokenVerifier} backed by the non-blocking {@link HttpClient} of the
+ * JDK.
+ */
+class JdkTokenVerifier implements TokenVerifier {
+
+    private static final String METRICS_KEY_PREFIX = "tokens.verifier";
+
+    private final HttpClient client;
+    private final URI tokenInfoUri;
+    private final Duration timeout;
+    private final MetricsListener.Timer successTimer;
+    private final MetricsListener.Timer failureTimer;
+
+    JdkTokenVerifier(HttpClient client, URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener) {
+        this.client = client;
+        this.tokenInfoUri = tokenInfoUri;
+        this.timeout = JdkHttpProvider.requestTimeout(httpConfig);
+        final MetricsListener metrics = MetricHandles.orNoop(metricsListener);
+        this.successTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, true));
+        this.failureTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, false));
+    }
+
+    @Override
+    public boolean isTokenValid(String token) {
+        return isTokenValidAsync(token).join();
+    }
+
+    //@formatter:off
+    @Override
+    public CompletableFuture<Boolean> isTokenValidAsync(String token) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(tokenInfoUri)
+                                                       .header("Accept", "application/json")
+                                                       .header("Authorization", "Bearer " + token)
+                                                       .header("User-Agent", HttpProvider.USER_AGENT.get())
+                                                       .GET();
+        if (timeout != null) {
+            request.timeout(timeout);
+        }
+
+        final long start = System.nanoTime();
+        return client.sendAsync(request.build(), BodyHandlers.discarding())
+                     .handle((response, t) -> {
+                         (t == null ? successTimer : failureTimer).recordNanos(System.nanoTime() - start);
+                         // only a 4xx is a reliable verdict, on errors do not delete the token
+                         return t != null || response.statusCode() < 400 || response.statusCode() >= 500;
+                     });
+    }
+    //@formatter:on
+
+    /**
+     * The JDK {@link HttpClient} has no lifecycle of its own, it is released
+     * once unreachable.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+
+/**
+ * Creates {@link TokenVerifier}s backed by the non-blocking JDK
+ * {@link HttpClient}, each with a client of its own. Use
+ * {@link JdkHttpProviderFactory} to share one client with the token requests.
+ */
+public class JdkTokenVerifierProvider implements TokenVerifierProvider {
+
+    @Override
+    public TokenVerifier create(URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener) {
+        return new JdkTokenVerifier(JdkHttpProviderFactory.newClient(httpConfig), tokenInfoUri, httpConfig,
+                metricsListener);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The RSA and EC public keys of a JSON Web Key Set (RFC 7517), by key id.
+ */
+final class JsonWebKeySet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonWebKeySet.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String NO_KEY_ID = "";
+
+    private final Map<String, PublicKey> keys;
+
+    private JsonWebKeySet(Map<String, PublicKey> keys) {
+        this.keys = keys;
+    }
+
+    static JsonWebKeySet parse(final byte[] json) throws IOException {
+        final Map<String, PublicKey> keys = new HashMap<>();
+        for (final JsonNode jwk : OBJECT_MAPPER.readTree(json).path("keys")) {
+            final String use = jwk.path("use").asText("sig");
+            if (!"sig".equals(use)) {
+                continue;
+            }
+            try {
+                final PublicKey key = toPublicKey(jwk);
+                if (key != null) {
+                    keys.put(jwk.path("kid").asText(NO_KEY_ID), key);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                LOG.warn("Skipping invalid JSON web key {}", jwk.path("kid").asText(), e);
+            }
+        }
+        return new JsonWebKeySet(Collections.unmodifiableMap(keys));
+    }
+
+    private static PublicKey toPublicKey(final JsonNode jwk) throws GeneralSecurityException {
+        switch (jwk.path("kty").asText()) {
+        case "RSA":
+            return KeyFactory.getInstance("RSA")
+                    .generatePublic(new RSAPublicKeySpec(integer(jwk, "n"), integer(jwk, "e")));
+        case "EC":
+            final AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(curveName(jwk.path("crv").asText())));
+            final ECPoint point = new ECPoint(integer(jwk, "x"), integer(jwk, "y"));
+            return KeyFactory.getInstance("EC")
+                    .generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+        default:
+            return null;
+        }
+    }
+
+    private static String curveName(final String crv) {
+        switch (crv) {
+        case "P-256":
+            return "secp256r1";
+        case "P-384":
+            return "secp384r1";
+        case "P-521":
+            return "secp521r1";
+        default:
+            throw new IllegalArgumentException("Unsupported curve " + crv);
+        }
+    }
+
+    private static BigInteger integer(final JsonNode jwk, final String field) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path(field).asText()));
+    }
+
+    /**
+     * @param keyId
+     *            the <i>kid</i> of the JWT header, may be <i>null</i>
+     * @return the matching key or <i>null</i> if there is none
+     */
+    PublicKey get(final String keyId) {
+        if (keyId == null) {
+            // without a key id only an unambiguous key set can be used
+            return keys.size() == 1 ? keys.values().iterator().next() : null;
+        }
+        return keys.get(keyId);
+    }
+
+    int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zalando.stups.tokens.util.Metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Verifies JWTs locally, see {@link JwtTokenVerifierProvider}.
+ */
+class JwtTokenVerifier implements TokenVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JwtTokenVerifier.class);
+
+    private static final String METRICS_KEY_PREFIX = "tokens.verifier.jwt";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final URI jwksUri;
+    private final String issuer;
+    private final long clockSkewMillis;
+    private final long maxKeySetAgeMillis;
+    private final long minReloadIntervalMillis;
+    private final HttpConfig httpConfig;
+    private final MetricsListener.Timer successTimer;
+    private final MetricsListener.Timer failureTimer;
+
+    private HttpClient client;
+    private volatile JsonWebKeySet keySet;
+    private volatile long loadedAt;
+
+    JwtTokenVerifier(URI jwksUri, String issuer, long clockSkewMillis, long maxKeySetAgeMillis,
+            long minReloadIntervalMillis, HttpConfig httpConfig, MetricsListener metricsListener) {
+        this.jwksUri = jwksUri;
+        this.issuer = issuer;
+        this.clockSkewMillis = clockSkewMillis;
+        this.maxKeySetAgeMillis = maxKeySetAgeMillis;
+        this.minReloadIntervalMillis = minReloadIntervalMillis;
+        this.httpConfig = httpConfig;
+        final MetricsListener metrics = MetricHandles.orNoop(metricsListener);
+        this.successTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, true));
+        this.failureTimer = metrics.timer(Metrics.buildMetricsKey(METRICS_KEY_PREFIX, false));
+    }
+
+    @Override
+    public boolean isTokenValid(String token) {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final boolean valid = verify(token);
+            success = true;
+            return valid;
+        } catch (IllegalStateException e) {
+            // no key set yet, do not delete the token
+            LOG.warn("Cannot verify JWT locally", e);
+            return true;
+        } finally {
+            (success ? successTimer : failureTimer).recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    private boolean verify(final String token) {
+        final int headerEnd = token.indexOf('.');
+        final int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            LOG.debug("Token is not a JWT, cannot verify it locally");
+            return true;
+        }
+
+        try {
+            final JsonNode header = decode(token.substring(0, headerEnd));
+            final String alg = header.path("alg").asText();
+            if ("none".equals(alg)) {
+                LOG.debug("JWT is not signed");
+                return false;
+            }
+            // a token the verifier cannot check is kept like a non-JWT one, a fresh
+            // one would fail the same way and just cause a refresh loop
+            final String algorithm = signatureAlgorithm(alg);
+            if (algorithm == null) {
+                LOG.warn("Unsupported JWT signature algorithm '{}', cannot verify it locally", alg);
+                return true;
+            }
+
+            final String keyId = header.hasNonNull("kid") ? header.get("kid").asText() : null;
+            final PublicKey key = key(keyId);
+            if (key == null) {
+                LOG.warn("No JSON web key found for key id '{}', cannot verify JWT locally", keyId);
+                return true;
+            }
+
+            final Signature signature = Signature.getInstance(algorithm);
+            signature.initVerify(key);
+            signature.update(token.substring(0, payloadEnd).getBytes(US_ASCII));
+            if (!signature.verify(Base64.getUrlDecoder().decode(token.substring(payloadEnd + 1)))) {
+                LOG.debug("JWT signature does not match");
+                return false;
+            }
+
+            return claimsValid(decode(token.substring(headerEnd + 1, payloadEnd)));
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+            LOG.debug("Malformed JWT", e);
+            return false;
+        }
+    }
+
+    private boolean claimsValid(final JsonNode claims) {
+        final long now = System.currentTimeMillis();
+        if (claims.has("exp") && claims.get("exp").asLong() * 1000 + clockSkewMillis < now) {
+            LOG.debug("JWT expired");
+            return false;
+        }
+        if (claims.has("nbf") && claims.get("nbf").asLong() * 1000 - clockSkewMillis > now) {
+            LOG.debug("JWT not valid yet");
+            return false;
+        }
+        if (issuer != null && !issuer.equals(claims.path("iss").asText(null))) {
+            LOG.debug("JWT issued by '{}' instead of '{}'", claims.path("iss").asText(null), issuer);
+            return false;
+        }
+        return true;
+    }
+
+    private static JsonNode decode(final String part) throws IOException {
+        return OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(part));
+    }
+
+    static String signatureAlgorithm(final String alg) {
+        switch (alg) {
+        case "RS256":
+            return "SHA256withRSA";
+        case "RS384":
+            return "SHA384withRSA";
+        case "RS512":
+            return "SHA512withRSA";
+        case "ES256":
+            return "SHA256withECDSAinP1363Format";
+        case "ES384":
+            return "SHA384withECDSAinP1363Format";
+        case "ES512":
+            return "SHA512withECDSAinP1363Format";
+        default:
+            // in particular 'none', RSASSA-PSS and the symmetric algorithms
+            return null;
+        }
+    }
+
+    /**
+     * The cached key set is reloaded when it is too old or does not know the
+     * key id, the latter at most once per <i>minReloadIntervalMillis</i>.
+     */
+    private PublicKey key(final String keyId) {
+        JsonWebKeySet keys = keySet;
+        if (keys == null || System.currentTimeMillis() - loadedAt > maxKeySetAgeMillis) {
+            keys = reload();
+        }
+        PublicKey key = keys.get(keyId);
+        if (key == null && System.currentTimeMillis() - loadedAt >= minReloadIntervalMillis) {
+            key = reload().get(keyId);
+        }
+        return key;
+    }
+
+    private synchronized JsonWebKeySet reload() {
+        try {
+            keySet = JsonWebKeySet.parse(load());
+            LOG.debug("Loaded {} JSON web keys from {}", keySet.size(), jwksUri);
+        } catch (IOException e) {
+            if (keySet == null) {
+                throw new IllegalStateException("Could not load JSON web keys from " + jwksUri, e);
+            }
+            LOG.warn("Could not reload JSON web keys from {}, keep using the cached ones", jwksUri, e);
+        }
+        loadedAt = System.currentTimeMillis();
+        return keySet;
+    }
+
+    private byte[] load() throws IOException {
+        if ("file".equals(jwksUri.getScheme())) {
+            return Files.readAllBytes(Paths.get(jwksUri));
+        }
+
+        if (client == null) {
+            client = JdkHttpProviderFactory.newClient(httpConfig);
+        }
+        final HttpRequest.Builder request = HttpRequest.newBuilder(jwksUri)
+                .header("Accept", "application/json")
+                .header("User-Agent", HttpProvider.USER_AGENT.get())
+                .GET();
+        final Duration timeout = JdkHttpProvider.requestTimeout(httpConfig);
+        if (timeout != null) {
+            request.timeout(timeout);
+        }
+        try {
+            final HttpResponse<byte[]> response = client.send(request.build(), BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException("Unexpected status " + response.statusCode());
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading JSON web keys");
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
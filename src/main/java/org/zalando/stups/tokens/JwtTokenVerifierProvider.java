@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.zalando.stups.tokens.util.Objects;
+
+/**
+ * Creates {@link TokenVerifier}s that validate JWT access tokens locally
+ * instead of calling the tokeninfo endpoint: the signature is checked against
+ * the keys of a JSON Web Key Set, then <i>exp</i>, <i>nbf</i> and optionally
+ * <i>iss</i>. The key set is loaded from a file or an URI, cached and reloaded
+ * when a token is signed with an unknown key.
+ *
+ * Tokens that cannot be verified locally are kept: those that are not JWTs,
+ * are signed with an unsupported algorithm or a key that is still unknown
+ * after reloading, or arrive while the key set cannot be loaded.
+ *
+ * <pre>
+ * Tokens.createAccessTokensWithUri(accessTokenUri)
+ *       .usingTokenVerifierProvider(new JwtTokenVerifierProvider(jwksUri).withIssuer("https://issuer"))
+ * </pre>
+ */
+public class JwtTokenVerifierProvider implements TokenVerifierProvider {
+
+    static final long MAX_KEY_SET_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    static final long MIN_KEY_SET_RELOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final URI jwksUri;
+
+    private String issuer;
+
+    private long clockSkewMillis = SECONDS.toMillis(30);
+
+    /**
+     * @param jwksUri
+     *            where to load the JSON Web Key Set from, a <i>file:</i> or
+     *            <i>http(s):</i> URI
+     */
+    public JwtTokenVerifierProvider(final URI jwksUri) {
+        this.jwksUri = Objects.notNull("jwksUri", jwksUri);
+    }
+
+    /**
+     * @param jwksFile
+     *            the file containing the JSON Web Key Set
+     */
+    public JwtTokenVerifierProvider(final File jwksFile) {
+        this(Objects.notNull("jwksFile", jwksFile).toURI());
+    }
+
+    /**
+     * Only accept tokens whose <i>iss</i> claim equals the supplied issuer.
+     *
+     * @param issuer
+     *            the expected issuer
+     * @return this provider
+     */
+    public JwtTokenVerifierProvider withIssuer(final String issuer) {
+        this.issuer = Objects.notNull("issuer", issuer);
+        return this;
+    }
+
+    /**
+     * Tolerance applied when checking <i>exp</i> and <i>nbf</i>, 30 seconds by
+     * default.
+     *
+     * @param clockSkew
+     *            the tolerated clock skew
+     * @param timeUnit
+     *            the {@link TimeUnit} of <i>clockSkew</i>
+     * @return this provider
+     */
+    public JwtTokenVerifierProvider withClockSkew(final long clockSkew, final TimeUnit timeUnit) {
+        this.clockSkewMillis = Objects.notNull("timeUnit", timeUnit).toMillis(clockSkew);
+        return this;
+    }
+
+    @Override
+    public TokenVerifier create(URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener) {
+        return new JwtTokenVerifier(jwksUri, issuer, clockSkewMillis, MAX_KEY_SET_AGE_MILLIS,
+                MIN_KEY_SET_RELOAD_INTERVAL_MILLIS, httpConfig, metricsListener);
+    }
+
+    @Override
+    public boolean requiresTokenInfoUri() {
+        return false;
+    }
+}
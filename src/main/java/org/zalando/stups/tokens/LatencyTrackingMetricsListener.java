@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.zalando.stups.tokens.util.LatencyHistogram;
+
+/**
+ * Records every timer in a {@link LatencyHistogram} of its own before passing
+ * it on to the configured {@link MetricsListener}.
+ */
+class LatencyTrackingMetricsListener implements MetricsListener, EndpointLatencies {
+
+    private final MetricsListener delegate;
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    LatencyTrackingMetricsListener(final MetricsListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void submitToTimer(final String key, final long time) {
+        histograms.computeIfAbsent(key, k -> new LatencyHistogram()).record(time, MILLISECONDS);
+        delegate.submitToTimer(key, time);
+    }
+
+    @Override
+    public void submitToCounter(final String key, final long delta) {
+        delegate.submitToCounter(key, delta);
+    }
+
+    @Override
+    public void submitToHistogram(final String key, final long value) {
+        delegate.submitToHistogram(key, value);
+    }
+
+    @Override
+    public void registerGauge(final String key, final LongSupplier gauge) {
+        delegate.registerGauge(key, gauge);
+    }
+
+    @Override
+    public Counter counter(final String key) {
+        return delegate.counter(key);
+    }
+
+    @Override
+    public Histogram histogram(final String key) {
+        return delegate.histogram(key);
+    }
+
+    @Override
+    public Timer timer(final String key) {
+        final LatencyHistogram histogram = histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+        final Timer timer = delegate.timer(key);
+        return new Timer() {
+
+            @Override
+            public void record(final long time) {
+                histogram.record(time, MILLISECONDS);
+                timer.record(time);
+            }
+
+            @Override
+            public void recordNanos(final long nanos) {
+                histogram.record(nanos);
+                timer.recordNanos(nanos);
+            }
+        };
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencySnapshots() {
+        final Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        histograms.forEach((key, histogram) -> snapshots.put(key, histogram.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getLatencySnapshot(final String key) {
+        final LatencyHistogram histogram = histograms.get(key);
+        return histogram != null ? histogram.snapshot() : null;
+    }
+
+}
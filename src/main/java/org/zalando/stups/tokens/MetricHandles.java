@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.zalando.stups.tokens.mcb.MCBState;
+
+/**
+ * Resolves the metric handles of the refresher and the verifiers once, so
+ * nothing is looked up or concatenated while reporting.
+ */
+final class MetricHandles {
+
+    private static final MetricsListener NOOP = (key, time) -> {
+    };
+
+    private MetricHandles() {
+    }
+
+    /**
+     * @return the supplied {@link MetricsListener} or one that ignores
+     *         everything if there is none
+     */
+    static MetricsListener orNoop(final MetricsListener metricsListener) {
+        return metricsListener != null ? metricsListener : NOOP;
+    }
+
+    /**
+     * @return the supplied {@link MetricsListener} for metrics reported on
+     *         every read of a token, or one that ignores everything if there
+     *         is none or it is the default {@link DebugLogMetricsListener},
+     *         which would flood the log and allocate on the read path
+     */
+    static MetricsListener forReadPath(final MetricsListener metricsListener) {
+        return metricsListener instanceof DebugLogMetricsListener ? NOOP : orNoop(metricsListener);
+    }
+
+    /**
+     * @return counts the transitions of a circuit breaker as
+     *         <i>prefix.open</i>, <i>prefix.half_open</i> and
+     *         <i>prefix.closed</i>
+     */
+    static Consumer<MCBState> transitionCounters(final MetricsListener metricsListener, final String prefix) {
+        final Map<MCBState, MetricsListener.Counter> counters = new EnumMap<>(MCBState.class);
+        for (final MCBState state : MCBState.values()) {
+            counters.put(state, metricsListener.counter(prefix + "." + state.name().toLowerCase(Locale.ROOT)));
+        }
+        return state -> counters.get(state).increment();
+    }
+
+}
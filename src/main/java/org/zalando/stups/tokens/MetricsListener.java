@@ -15,8 +15,120 @@
  */
 package org.zalando.stups.tokens;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
 public interface MetricsListener {
 
     void submitToTimer(String key, long time);
 
+    /**
+     * Adds the supplied <i>delta</i> to the counter with the given <i>key</i>.
+     * Does nothing by default.
+     *
+     * @param key
+     *            the name of the counter
+     * @param delta
+     *            the amount to add
+     */
+    default void submitToCounter(String key, long delta) {
+    }
+
+    /**
+     * Records the supplied <i>value</i> in the distribution with the given
+     * <i>key</i>. Does nothing by default.
+     *
+     * @param key
+     *            the name of the histogram
+     * @param value
+     *            the value to record
+     */
+    default void submitToHistogram(String key, long value) {
+    }
+
+    /**
+     * Registers a gauge that is read whenever the metrics system samples it,
+     * so nothing has to be reported on change. Does nothing by default.
+     *
+     * @param key
+     *            the name of the gauge
+     * @param gauge
+     *            supplies the current value, must be cheap and thread-safe
+     */
+    default void registerGauge(String key, LongSupplier gauge) {
+    }
+
+    /**
+     * Resolves the counter with the given <i>key</i> once, so hot paths do not
+     * build keys or look up metrics on every call. By default the handle
+     * delegates to {@link #submitToCounter(String, long)}, override to hand out
+     * the counter of your metrics library directly.
+     *
+     * @param key
+     *            the name of the counter
+     * @return a handle to report to
+     */
+    default Counter counter(String key) {
+        return delta -> submitToCounter(key, delta);
+    }
+
+    /**
+     * Like {@link #counter(String)}, for {@link #submitToTimer(String, long)}.
+     *
+     * @param key
+     *            the name of the timer
+     * @return a handle to report to
+     */
+    default Timer timer(String key) {
+        return time -> submitToTimer(key, time);
+    }
+
+    /**
+     * Like {@link #counter(String)}, for
+     * {@link #submitToHistogram(String, long)}.
+     *
+     * @param key
+     *            the name of the histogram
+     * @return a handle to report to
+     */
+    default Histogram histogram(String key) {
+        return value -> submitToHistogram(key, value);
+    }
+
+    @FunctionalInterface
+    interface Counter {
+
+        void increment(long delta);
+
+        default void increment() {
+            increment(1);
+        }
+    }
+
+    @FunctionalInterface
+    interface Timer {
+
+        /**
+         * @param time
+         *            milliseconds
+         */
+        void record(long time);
+
+        /**
+         * @param nanos
+         *            nanoseconds, e.g. the difference of two
+         *            {@link System#nanoTime()} calls, reported as
+         *            milliseconds by default
+         */
+        default void recordNanos(long nanos) {
+            record(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    @FunctionalInterface
+    interface Histogram {
+
+        void record(long value);
+    }
+
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the point in time (epoch millis) each managed <i>tokenId</i> is due
+ * for refresh, ordered by that deadline. The {@link AccessTokenRefresher} only
+ * looks at the head of this schedule instead of checking every token on every
+ * run.
+ */
+class RefreshSchedule {
+
+    private static final Comparator<Entry> BY_DEADLINE = Comparator.<Entry> comparingLong(e -> e.deadline)
+            .thenComparingLong(e -> e.sequence);
+
+    private final TreeSet<Entry> deadlines = new TreeSet<>(BY_DEADLINE);
+    private final Map<Object, Entry> entries = new HashMap<>();
+    private long sequence = 0;
+
+    /**
+     * Set (or move) the refresh deadline for the supplied <i>tokenId</i>.
+     */
+    synchronized void schedule(final Object tokenId, final long deadline) {
+        final Entry previous = entries.remove(tokenId);
+        if (previous != null) {
+            deadlines.remove(previous);
+        }
+        final Entry entry = new Entry(tokenId, deadline, sequence++);
+        entries.put(tokenId, entry);
+        deadlines.add(entry);
+    }
+
+    /**
+     * Collect all <i>tokenId</i>s due at <i>now</i> and move them to
+     * <i>retryAt</i>, so that a token whose refresh does not come back with a
+     * new deadline is retried instead of being dropped from the schedule.
+     */
+    synchronized List<Object> pollDue(final long now, final long retryAt) {
+        final List<Object> due = new ArrayList<>();
+        while (!deadlines.isEmpty() && deadlines.first().deadline <= now) {
+            due.add(deadlines.pollFirst().tokenId);
+        }
+        for (Object tokenId : due) {
+            final Entry entry = new Entry(tokenId, retryAt, sequence++);
+            entries.put(tokenId, entry);
+            deadlines.add(entry);
+        }
+        return due;
+    }
+
+    /**
+     * @return the earliest deadline of all scheduled tokens or
+     *         {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    synchronized long nextDeadline() {
+        return deadlines.isEmpty() ? Long.MAX_VALUE : deadlines.first().deadline;
+    }
+
+    synchronized Long deadlineOf(final Object tokenId) {
+        final Entry entry = entries.get(tokenId);
+        return entry == null ? null : entry.deadline;
+    }
+
+    private static final class Entry {
+        private final Object tokenId;
+        private final long deadline;
+        private final long sequence;
+
+        private Entry(final Object tokenId, final long deadline, final long sequence) {
+            this.tokenId = tokenId;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+    }
+}
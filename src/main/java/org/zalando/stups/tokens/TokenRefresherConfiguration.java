@@ -15,14 +15,23 @@
  */
 package org.zalando.stups.tokens;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.crypto.SecretKey;
+
 import org.zalando.stups.tokens.fs.FilesystemSecretsRefresherConfiguration;
 import org.zalando.stups.tokens.mcb.MCBConfig;
+import org.zalando.stups.tokens.util.TokenBucket;
 
+/**
+ * Settings added after the first release have default implementations
+ * matching the defaults of {@link AccessTokensBuilder}, so existing
+ * implementations keep compiling.
+ */
 public interface TokenRefresherConfiguration {
 
     ClientCredentialsProvider getClientCredentialsProvider();
@@ -31,8 +40,29 @@ public interface TokenRefresherConfiguration {
 
     int getRefreshPercentLeft();
 
+    /**
+     * @return no jitter by default
+     */
+    default int getRefreshJitterPercent() {
+        return 0;
+    }
+
     int getWarnPercentLeft();
 
+    /**
+     * @return one refresh at a time by default
+     */
+    default int getRefreshParallelism() {
+        return 1;
+    }
+
+    /**
+     * @return no on-demand refresh by default
+     */
+    default long getOnDemandRefreshTimeoutMillis() {
+        return 0;
+    }
+
     Set<AccessTokenConfiguration> getAccessTokenConfigurations();
 
     URI getAccessTokenUri();
@@ -55,6 +85,34 @@ public interface TokenRefresherConfiguration {
 
     MCBConfig getTokenVerifierMcbConfig();
 
+    /**
+     * @return unlimited by default
+     */
+    default TokenBucket getTokenEndpointRateLimit() {
+        return null;
+    }
+
+    /**
+     * @return unlimited by default
+     */
+    default TokenBucket getTokenInfoRateLimit() {
+        return null;
+    }
+
+    /**
+     * @return no snapshot by default
+     */
+    default File getTokenSnapshotFile() {
+        return null;
+    }
+
+    /**
+     * @return no snapshot by default
+     */
+    default SecretKey getTokenSnapshotKey() {
+        return null;
+    }
+
     MetricsListener getMetricsListener();
 
     TimeUnit getSchedulingTimeUnit();
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keeps the still valid {@link AccessToken}s in a file encrypted with
+ * AES-GCM, so a restarted instance can serve them right away instead of
+ * fetching every token first.
+ * <p>
+ * Layout: version (1 byte), IV (12 bytes), ciphertext with the 128 bit
+ * authentication tag. A file that cannot be decrypted, e.g. because it has
+ * been written with another key or tampered with, is ignored. Files are
+ * written to a temporary file next to the snapshot and moved in place, so
+ * readers never see a partial snapshot.
+ */
+class TokenSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenSnapshot.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final byte VERSION = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final Path file;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+
+    TokenSnapshot(final File file, final SecretKey key) {
+        this.file = file.toPath();
+        this.key = key;
+    }
+
+    /**
+     * @return the tokens of the snapshot by <i>tokenId</i>, expired ones are
+     *         left out, empty if there is no readable snapshot
+     */
+    Map<String, AccessToken> load() {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            LOG.debug("No token snapshot at {}", file);
+            return Collections.emptyMap();
+        } catch (IOException e) {
+            LOG.warn("Cannot read token snapshot {}", file, e);
+            return Collections.emptyMap();
+        }
+
+        final Entry[] entries;
+        try {
+            entries = OBJECT_MAPPER.readValue(decrypt(bytes), Entry[].class);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            LOG.warn("Ignoring token snapshot {}, it cannot be decrypted with the configured key", file, e);
+            return Collections.emptyMap();
+        }
+
+        final Map<String, AccessToken> tokens = new HashMap<>();
+        for (final Entry entry : entries) {
+            final AccessToken token = entry.toAccessToken();
+            if (!token.isExpired()) {
+                tokens.put(entry.tokenId, token);
+            }
+        }
+        LOG.info("Loaded {} access tokens from snapshot {}", tokens.size(), file);
+        return tokens;
+    }
+
+    /**
+     * Replace the snapshot with the supplied tokens that are still valid.
+     */
+    synchronized void store(final Map<Object, AccessToken> tokens) {
+        final List<Entry> entries = new ArrayList<>(tokens.size());
+        tokens.forEach((tokenId, token) -> {
+            if (!token.isExpired()) {
+                entries.add(new Entry(tokenId.toString(), token));
+            }
+        });
+
+        Path tmp = null;
+        try {
+            final byte[] bytes = encrypt(OBJECT_MAPPER.writeValueAsBytes(entries));
+            tmp = createTempFile();
+            Files.write(tmp, bytes);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.debug("Stored {} access tokens in snapshot {}", entries.size(), file);
+        } catch (GeneralSecurityException | IOException e) {
+            LOG.warn("Cannot store token snapshot {}", file, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        final Path dir = file.toAbsolutePath().getParent();
+        final String prefix = "." + file.getFileName() + ".";
+        try {
+            return Files.createTempFile(dir, prefix, ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            return Files.createTempFile(dir, prefix, ".tmp");
+        }
+    }
+
+    byte[] encrypt(final byte[] plaintext) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(aad());
+        final byte[] ciphertext = cipher.doFinal(plaintext);
+        return ByteBuffer.allocate(1 + IV_LENGTH + ciphertext.length).put(VERSION).put(iv).put(ciphertext).array();
+    }
+
+    byte[] decrypt(final byte[] bytes) throws GeneralSecurityException {
+        if (bytes.length < 1 + IV_LENGTH || bytes[0] != VERSION) {
+            throw new GeneralSecurityException("Unknown token snapshot format");
+        }
+        final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 1, IV_LENGTH));
+        cipher.updateAAD(aad());
+        return cipher.doFinal(bytes, 1 + IV_LENGTH, bytes.length - 1 - IV_LENGTH);
+    }
+
+    /**
+     * Binds the ciphertext to the version and the name of the file.
+     */
+    private byte[] aad() {
+        return ("tokens-snapshot-" + VERSION + ":" + file.getFileName()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Entry {
+
+        @JsonProperty
+        private String tokenId;
+        @JsonProperty
+        private String token;
+        @JsonProperty
+        private String type;
+        @JsonProperty
+        private long initialValidSeconds;
+        @JsonProperty
+        private long validUntil;
+        @JsonProperty
+        private long creationTimestamp;
+
+        Entry() {
+        }
+
+        Entry(final String tokenId, final AccessToken accessToken) {
+            this.tokenId = tokenId;
+            this.token = accessToken.getToken();
+            this.type = accessToken.getType();
+            this.initialValidSeconds = accessToken.getInitialValidSeconds();
+            this.validUntil = accessToken.getValidUntilMillis();
+            this.creationTimestamp = accessToken.getCreationTimestamp();
+        }
+
+        AccessToken toAccessToken() {
+            return new AccessToken(token, type, initialValidSeconds,
+                    validUntil == Long.MAX_VALUE ? null : new Date(validUntil), creationTimestamp);
+        }
+    }
+
+}
@@ -16,9 +16,26 @@
 package org.zalando.stups.tokens;
 
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 
 public interface TokenVerifier extends Closeable {
 
     boolean isTokenValid(String token);
 
+    /**
+     * Non-blocking variant of {@link #isTokenValid(String)}. The default
+     * implementation calls the blocking method on the calling thread.
+     *
+     * @param token
+     *            the token to verify
+     * @return a future completed with the result of the verification
+     */
+    default CompletableFuture<Boolean> isTokenValidAsync(String token) {
+        try {
+            return CompletableFuture.completedFuture(isTokenValid(token));
+        } catch (Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+    }
+
 }
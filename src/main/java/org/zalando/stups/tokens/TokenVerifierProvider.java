@@ -21,4 +21,15 @@ public interface TokenVerifierProvider {
 
     TokenVerifier create(URI tokenInfoUri, HttpConfig httpConfig, MetricsListener metricsListener);
 
+    /**
+     * Whether the created {@link TokenVerifier}s call the tokeninfo endpoint.
+     * Verification is only enabled without a configured <i>tokenInfoUri</i>
+     * if this returns <i>false</i>.
+     *
+     * @return <i>true</i> by default
+     */
+    default boolean requiresTokenInfoUri() {
+        return true;
+    }
+
 }
@@ -16,15 +16,21 @@
 package org.zalando.stups.tokens;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.stups.tokens.mcb.MCB;
+import org.zalando.stups.tokens.util.TokenBucket;
 
 /**
  *
@@ -35,45 +41,86 @@ class TokenVerifyRunner implements Runnable, Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(TokenVerifyRunner.class);
 
+    private static final String METRICS_KEY_PREFIX = "tokens.verifier";
+
     private final TokenRefresherConfiguration configuration;
     private final Map<Object, AccessToken> accessTokens;
     private Set<Object> invalidTokenIds;
 
+    private final Consumer<Object> invalidTokenListener;
+
     private final MCB mcb;
 
+    private final MetricsListener.Counter throttled;
+
     private TokenVerifier tokenVerifier;
 
     public TokenVerifyRunner(TokenRefresherConfiguration configuration, Map<Object, AccessToken> accessTokens,
             Set<Object> invalidTokenIds) {
+        this(configuration, accessTokens, invalidTokenIds, tokenId -> {
+        });
+    }
+
+    /**
+     * @param invalidTokenListener
+     *            notified with the <i>tokenId</i> of every token found to be
+     *            invalid, e.g. to schedule its refresh right away
+     */
+    public TokenVerifyRunner(TokenRefresherConfiguration configuration, Map<Object, AccessToken> accessTokens,
+            Set<Object> invalidTokenIds, Consumer<Object> invalidTokenListener) {
+        this(configuration, accessTokens, invalidTokenIds, invalidTokenListener,
+                MetricHandles.orNoop(configuration.getMetricsListener()));
+    }
+
+    /**
+     * @param metricsListener
+     *            reported to instead of the one of the configuration
+     */
+    TokenVerifyRunner(TokenRefresherConfiguration configuration, Map<Object, AccessToken> accessTokens,
+            Set<Object> invalidTokenIds, Consumer<Object> invalidTokenListener, MetricsListener metricsListener) {
         this.configuration = configuration;
         this.accessTokens = accessTokens;
         this.invalidTokenIds = invalidTokenIds;
-        this.mcb = new MCB(this.configuration.getTokenVerifierMcbConfig());
-        if (configuration.getTokenInfoUri() != null) {
-            this.tokenVerifier = configuration.getTokenVerifierProvider().create(configuration.getTokenInfoUri(),
-                    configuration.getHttpConfig(), configuration.getMetricsListener());
+        this.invalidTokenListener = invalidTokenListener;
+        this.throttled = metricsListener.counter(METRICS_KEY_PREFIX + ".throttled");
+        this.mcb = new MCB(this.configuration.getTokenVerifierMcbConfig(),
+                MetricHandles.transitionCounters(metricsListener, METRICS_KEY_PREFIX + ".mcb"));
+        final TokenVerifierProvider tokenVerifierProvider = configuration.getTokenVerifierProvider();
+        if (configuration.getTokenInfoUri() != null
+                || (tokenVerifierProvider != null && !tokenVerifierProvider.requiresTokenInfoUri())) {
+            this.tokenVerifier = tokenVerifierProvider.create(configuration.getTokenInfoUri(),
+                    configuration.getHttpConfig(), metricsListener);
         } else {
             LOG.info("No AccessToken-Verification enabled because no 'tokenInfoUri' was configured");
         }
     }
 
+    /**
+     * Starts all verifications through
+     * {@link TokenVerifier#isTokenValidAsync(String)} before waiting for any of
+     * them, so a non-blocking {@link TokenVerifier} has them all in flight at
+     * the same time.
+     */
     @Override
     public void run() {
         if (tokenVerifier != null) {
             if (mcb.isClosed()) {
+                final List<CompletableFuture<Void>> verifications = new ArrayList<>();
                 for (final AccessTokenConfiguration tokenConfig : configuration.getAccessTokenConfigurations()) {
                     try {
                         final AccessToken accessToken = accessTokens.get(tokenConfig.getTokenId());
 
                         if (accessToken != null && olderThanMinute(accessToken)) {
-                            String token = accessToken.getToken();
-                            if (!tokenVerifier.isTokenValid(token)) {
-                                invalidTokenIds.add(accessToken);
-                                LOG.warn("Invalid Token scheduled for refresh : " + tokenConfig.getTokenId());
-                            } else {
-                                LOG.debug("Token for " + tokenConfig.getTokenId() + " still valid.");
+                            if (!tryAcquire()) {
+                                LOG.debug("Verification of token {} throttled", tokenConfig.getTokenId());
+                                continue;
                             }
-                            mcb.onSuccess();
+                            final long start = System.nanoTime();
+                            verifications.add(tokenVerifier.isTokenValidAsync(accessToken.getToken())
+                                    .handle((valid, t) -> {
+                                        onVerified(tokenConfig, accessToken, valid, t, System.nanoTime() - start);
+                                        return null;
+                                    }));
                         }
                     } catch (final Throwable t) {
                         LOG.warn("Unexpected problem during token verify run! TokenId : {}", tokenConfig.getTokenId(),
@@ -81,6 +128,7 @@ class TokenVerifyRunner implements Runnable, Closeable {
                         mcb.onError();
                     }
                 }
+                CompletableFuture.allOf(verifications.toArray(new CompletableFuture<?>[0])).join();
             } else {
                 LOG.debug("{} is open, skipping check.", mcb.getName());
             }
@@ -89,6 +137,32 @@ class TokenVerifyRunner implements Runnable, Closeable {
         }
     }
 
+    private void onVerified(final AccessTokenConfiguration tokenConfig, final AccessToken accessToken,
+            final Boolean valid, final Throwable t, final long nanos) {
+        if (t != null) {
+            LOG.warn("Unexpected problem during token verify run! TokenId : {}", tokenConfig.getTokenId(), t);
+            mcb.onError(nanos, NANOSECONDS);
+            return;
+        }
+        if (!Boolean.TRUE.equals(valid)) {
+            invalidTokenIds.add(accessToken);
+            LOG.warn("Invalid Token scheduled for refresh : " + tokenConfig.getTokenId());
+            invalidTokenListener.accept(tokenConfig.getTokenId());
+        } else {
+            LOG.debug("Token for " + tokenConfig.getTokenId() + " still valid.");
+        }
+        mcb.onSuccess(nanos, NANOSECONDS);
+    }
+
+    private boolean tryAcquire() {
+        final TokenBucket rateLimit = configuration.getTokenInfoRateLimit();
+        if (rateLimit == null || rateLimit.tryAcquire()) {
+            return true;
+        }
+        throttled.increment();
+        return false;
+    }
+
     protected boolean olderThanMinute(AccessToken accessToken) {
         long diff = System.currentTimeMillis() - accessToken.getCreationTimestamp();
         return diff > MINUTES.toMillis(1) ? true : false;
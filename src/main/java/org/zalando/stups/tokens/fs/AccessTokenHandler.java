@@ -18,7 +18,6 @@ package org.zalando.stups.tokens.fs;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 import static org.zalando.stups.tokens.EndsWithFilenameFilter.forSuffix;
-import static org.zalando.stups.tokens.fs.FileUtils.readContent;
 
 import java.io.File;
 import java.io.FilenameFilter;
@@ -36,9 +35,9 @@ import org.zalando.stups.tokens.AccessToken;
 class AccessTokenHandler implements Consumer<AccessTokenDto>, Function<File, AccessTokenDto>, Predicate<AccessTokenDto>,
         Supplier<FilenameFilter> {
 
-    private static final String TOKEN_TYPE = "-token-type";
+    static final String TOKEN_TYPE = "-token-type";
 
-    private static final String TOKEN_SECRET = "-token-secret";
+    static final String TOKEN_SECRET = "-token-secret";
 
     private final Logger LOG = LoggerFactory.getLogger(AccessTokenHandler.class);
 
@@ -57,21 +56,40 @@ class AccessTokenHandler implements Consumer<AccessTokenDto>, Function<File, Acc
 
     @Override
     public AccessTokenDto apply(File tokenSecretFile) {
-        final String name = tokenSecretFile.getName().replace(TOKEN_SECRET, "");
-
         try {
-            String secret = readContent(tokenSecretFile.getAbsolutePath());
-            String type = readContent(tokenSecretFile.toPath().resolveSibling(name + TOKEN_TYPE).toString());
-            return new AccessTokenDto(tokenContentExtractor.extract(secret, type), name);
+            return toAccessToken(TokenFile.read(tokenSecretFile));
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * Consumes a token file already read by the
+     * {@link CredentialsDirectoryScanner}. The type is checked before the
+     * content gets extracted, so tokens of other types are never decoded.
+     */
+    void consume(TokenFile tokenFile) {
+        if (acceptsType(tokenFile.getType())) {
+            final AccessTokenDto t = toAccessToken(tokenFile);
+            if (test(t)) {
+                accept(t);
+            }
+        }
+    }
+
+    private AccessTokenDto toAccessToken(TokenFile tokenFile) {
+        return new AccessTokenDto(tokenContentExtractor.extract(tokenFile.getSecret(), tokenFile.getType()),
+                tokenFile.getName());
+    }
+
     @Override
     public boolean test(AccessTokenDto t) {
-        return nonNull(t) && "Bearer".equals(t.getType());
+        return nonNull(t) && acceptsType(t.getType());
+    }
+
+    protected boolean acceptsType(String type) {
+        return "Bearer".equals(type);
     }
 
     @Override
@@ -39,9 +39,9 @@ class ClientCredentialsHandler implements Consumer<SimpleClientCredentials>, Fun
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientCredentialsHandler.class);
 
-    private static final String CLIENT_SECRET = "-client-secret";
+    static final String CLIENT_SECRET = "-client-secret";
 
-    private static final String TEMPLATE_SUFFIX = "-client-id";
+    static final String CLIENT_ID = "-client-id";
 
     private final Map<String, ClientCredentials> target;
 
@@ -51,7 +51,7 @@ class ClientCredentialsHandler implements Consumer<SimpleClientCredentials>, Fun
 
     @Override
     public FilenameFilter get() {
-        return EndsWithFilenameFilter.forSuffix(TEMPLATE_SUFFIX);
+        return EndsWithFilenameFilter.forSuffix(CLIENT_ID);
     }
 
     @Override
@@ -61,7 +61,7 @@ class ClientCredentialsHandler implements Consumer<SimpleClientCredentials>, Fun
 
     @Override
     public SimpleClientCredentials apply(File t) {
-        final String name = t.getName().replace(TEMPLATE_SUFFIX, "");
+        final String name = t.getName().replace(CLIENT_ID, "");
 
         try {
             String id = readContent(t.getAbsolutePath());
@@ -78,6 +78,21 @@ class ClientCredentialsHandler implements Consumer<SimpleClientCredentials>, Fun
         this.target.put(t.getName(), t);
     }
 
+    /**
+     * Reads and consumes the supplied <i>-client-id</i> file, used by the
+     * {@link CredentialsDirectoryScanner}.
+     *
+     * @return whether the file could be read
+     */
+    boolean consume(File clientIdFile) {
+        final SimpleClientCredentials t = apply(clientIdFile);
+        if (test(t)) {
+            accept(t);
+            return true;
+        }
+        return false;
+    }
+
     public FilesystemReader<?> getFilesystemReader() {
         return new FilesystemReader<>(this, this, this, get());
     }
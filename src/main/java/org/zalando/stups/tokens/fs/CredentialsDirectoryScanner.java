@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import static org.zalando.stups.tokens.FileSupplier.getCredentialsDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zalando.stups.tokens.MetricsListener;
+import org.zalando.stups.tokens.util.FileFingerprint;
+
+/**
+ * Reads all credentials in a single pass over the credentials directory: it
+ * is listed once and every <i>-token-secret</i> file is read once, then
+ * handed to all {@link AccessTokenHandler}s (access tokens and secrets).
+ *
+ * Credentials whose files did not change since they have been read last (see
+ * {@link FileFingerprint}) are skipped, so the tokens already known, including
+ * their creation timestamps, stay untouched.
+ */
+class CredentialsDirectoryScanner implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialsDirectoryScanner.class);
+
+    static final String FILES_READ_METRICS_KEY = "tokens.fs.files.read";
+
+    static final String FILES_SKIPPED_METRICS_KEY = "tokens.fs.files.skipped";
+
+    private enum Outcome {
+        READ, SKIPPED, IGNORED
+    }
+
+    private final List<AccessTokenHandler> tokenHandlers;
+    private final ClientCredentialsHandler clientCredentialsHandler;
+    private final MetricsListener.Counter filesRead;
+    private final MetricsListener.Counter filesSkipped;
+
+    // by name of the -token-secret or -client-id file, covering its sibling too
+    private final Map<String, List<FileFingerprint>> fingerprints = new HashMap<>();
+
+    CredentialsDirectoryScanner(List<AccessTokenHandler> tokenHandlers,
+            ClientCredentialsHandler clientCredentialsHandler, MetricsListener metricsListener) {
+        this.tokenHandlers = tokenHandlers;
+        this.clientCredentialsHandler = clientCredentialsHandler;
+        this.filesRead = metricsListener.counter(FILES_READ_METRICS_KEY);
+        this.filesSkipped = metricsListener.counter(FILES_SKIPPED_METRICS_KEY);
+    }
+
+    @Override
+    public void run() {
+        try {
+            scan(getCredentialsDir());
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    synchronized void scan(final File directory) {
+        LOG.debug("read from filesystem ...");
+        final String[] fileNames = directory.list();
+        if (fileNames == null) {
+            LOG.warn("Cannot list credentials directory {}", directory);
+            return;
+        }
+        long read = 0;
+        long skipped = 0;
+        final Set<String> seen = new HashSet<>();
+        for (final String fileName : fileNames) {
+            final Outcome outcome = readIfChanged(new File(directory, fileName));
+            if (outcome == Outcome.READ) {
+                read++;
+            } else if (outcome == Outcome.SKIPPED) {
+                skipped++;
+            }
+            seen.add(fileName);
+        }
+        fingerprints.keySet().retainAll(seen);
+        submit(read, skipped);
+    }
+
+    /**
+     * Reads a single file, if it is one of the handled credentials files and
+     * it changed since it has been read last.
+     */
+    synchronized void read(final File file) {
+        final Outcome outcome = readIfChanged(file);
+        submit(outcome == Outcome.READ ? 1 : 0, outcome == Outcome.SKIPPED ? 1 : 0);
+    }
+
+    private Outcome readIfChanged(final File file) {
+        final String fileName = file.getName();
+        final Path sibling;
+        if (fileName.endsWith(AccessTokenHandler.TOKEN_SECRET)) {
+            sibling = sibling(file, AccessTokenHandler.TOKEN_SECRET, AccessTokenHandler.TOKEN_TYPE);
+        } else if (fileName.endsWith(ClientCredentialsHandler.CLIENT_ID)) {
+            sibling = sibling(file, ClientCredentialsHandler.CLIENT_ID, ClientCredentialsHandler.CLIENT_SECRET);
+        } else {
+            return Outcome.IGNORED;
+        }
+
+        List<FileFingerprint> fingerprint;
+        try {
+            fingerprint = Arrays.asList(FileFingerprint.of(file.toPath()), FileFingerprint.of(sibling));
+        } catch (IOException e) {
+            // let reading report what is wrong
+            fingerprint = null;
+        }
+        if (fingerprint != null && fingerprint.equals(fingerprints.get(fileName))) {
+            return Outcome.SKIPPED;
+        }
+
+        if (dispatch(file) && fingerprint != null) {
+            fingerprints.put(fileName, fingerprint);
+        } else {
+            fingerprints.remove(fileName);
+        }
+        return Outcome.READ;
+    }
+
+    private static Path sibling(final File file, final String suffix, final String siblingSuffix) {
+        final String fileName = file.getName();
+        return file.toPath().resolveSibling(fileName.substring(0, fileName.length() - suffix.length()) + siblingSuffix);
+    }
+
+    private boolean dispatch(final File file) {
+        if (file.getName().endsWith(AccessTokenHandler.TOKEN_SECRET)) {
+            final TokenFile tokenFile;
+            try {
+                tokenFile = TokenFile.read(file);
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+                return false;
+            }
+            for (final AccessTokenHandler handler : tokenHandlers) {
+                handler.consume(tokenFile);
+            }
+            return true;
+        }
+        return clientCredentialsHandler.consume(file);
+    }
+
+    private void submit(final long read, final long skipped) {
+        filesRead.increment(read);
+        filesSkipped.increment(skipped);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reloads credentials when the files in the credentials directory change
+ * instead of rescanning the directory periodically.
+ *
+ * Only the changed files are read again. Kubernetes mounts secrets as
+ * symlinks into a <i>..data</i> directory that is swapped atomically on
+ * updates, so any change to a <i>..</i>-prefixed entry (as well as an
+ * {@link java.nio.file.StandardWatchEventKinds#OVERFLOW}) reloads everything.
+ */
+class CredentialsDirectoryWatcher implements Runnable, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialsDirectoryWatcher.class);
+
+    private static final String THREAD_NAME = "token-credentials-watcher";
+
+    private static final String KUBERNETES_PREFIX = "..";
+
+    private final Path directory;
+    private final CredentialsDirectoryScanner scanner;
+    private final Runnable reloadListener;
+    private final WatchService watchService;
+
+    /**
+     * @param reloadListener
+     *            called on the watcher thread after changed files have been
+     *            read
+     */
+    CredentialsDirectoryWatcher(Path directory, CredentialsDirectoryScanner scanner, Runnable reloadListener)
+            throws IOException {
+        this.directory = directory;
+        this.scanner = scanner;
+        this.reloadListener = reloadListener;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    void start() {
+        final Thread thread = new Thread(this, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Watching {} for changed credentials", directory);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                final Set<String> changed = new LinkedHashSet<>();
+                boolean reloadAll = false;
+                // drain everything that arrived together, e.g. a secret and its type
+                do {
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            reloadAll = true;
+                        } else {
+                            final String fileName = event.context().toString();
+                            reloadAll |= fileName.startsWith(KUBERNETES_PREFIX);
+                            changed.add(fileName);
+                        }
+                    }
+                    if (!key.reset()) {
+                        LOG.warn("{} can no longer be watched, credentials will not be reloaded anymore", directory);
+                        return;
+                    }
+                    key = watchService.poll();
+                } while (key != null);
+
+                reload(reloadAll, changed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Stopped watching {}", directory);
+        }
+    }
+
+    private void reload(final boolean reloadAll, final Set<String> fileNames) {
+        try {
+            if (reloadAll) {
+                LOG.debug("Reloading all credentials from {}", directory);
+                scanner.scan(directory.toFile());
+            } else {
+                for (final String fileName : fileNames) {
+                    final Path file = directory.resolve(primaryFileName(fileName));
+                    if (Files.isRegularFile(file)) {
+                        LOG.debug("Reloading credentials from changed file {}", fileName);
+                        scanner.read(file.toFile());
+                    }
+                }
+            }
+            reloadListener.run();
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Credentials are read starting from one of their files, map the others
+     * to it.
+     */
+    static String primaryFileName(final String fileName) {
+        if (fileName.endsWith(AccessTokenHandler.TOKEN_TYPE)) {
+            return fileName.substring(0, fileName.length() - AccessTokenHandler.TOKEN_TYPE.length())
+                    + AccessTokenHandler.TOKEN_SECRET;
+        }
+        if (fileName.endsWith(ClientCredentialsHandler.CLIENT_SECRET)) {
+            return fileName.substring(0, fileName.length() - ClientCredentialsHandler.CLIENT_SECRET.length())
+                    + ClientCredentialsHandler.CLIENT_ID;
+        }
+        return fileName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
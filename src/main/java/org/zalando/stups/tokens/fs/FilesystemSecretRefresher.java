@@ -15,8 +15,10 @@
  */
 package org.zalando.stups.tokens.fs;
 
+import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.toList;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,6 +34,8 @@ public class FilesystemSecretRefresher extends AbstractAccessTokenRefresher impl
     private final Map<String, Secret> secrets = new ConcurrentHashMap<>();
     private final Map<String, ClientCredentials> clientCredentials = new ConcurrentHashMap<>();
 
+    private CredentialsDirectoryWatcher watcher;
+
     public FilesystemSecretRefresher(TokenRefresherConfiguration configuration) {
         super(configuration);
     }
@@ -39,32 +43,62 @@ public class FilesystemSecretRefresher extends AbstractAccessTokenRefresher impl
     @Override
     public void start() {
         initializeFixedTokensFromEnvironment();
-        LOG.info("Starting to refresh tokens regularly from filesystem ...");
-
-        // access-tokens
-        FilesystemReader<?> reader = new AccessTokenHandler(accessTokens,
-                configuration.getFilesystemSecretsRefresherConfiguration().getTokenContentExtractor())
-                        .getFilesystemReader();
-
-        if (configuration.getFilesystemSecretsRefresherConfiguration().isValidateTokensOnStartup()) {
-            reader.readFromFilesystem();
+        final FilesystemSecretsRefresherConfiguration filesystemConfiguration = configuration
+                .getFilesystemSecretsRefresherConfiguration();
+
+        // access-tokens, authorizations and clients in one pass over the directory
+        final CredentialsDirectoryScanner scanner = new CredentialsDirectoryScanner(
+                asList(new AccessTokenHandler(accessTokens, filesystemConfiguration.getTokenContentExtractor()),
+                        new SecretsHandler(secrets)),
+                new ClientCredentialsHandler(clientCredentials), metricsListener);
+
+        long initialDelay = 0;
+        if (filesystemConfiguration.isValidateTokensOnStartup()) {
+            scanner.run();
             List<?> missing = findMissingTokens();
             if (missing.size() > 0) {
                 throw new TokensMissingException(missing);
             }
+            initialDelay = configuration.getSchedulingPeriod();
         }
 
-        scheduler.scheduleAtFixedRate(reader, 0, configuration.getSchedulingPeriod(),
+        if (filesystemConfiguration.isWatchForChanges() && startWatching(scanner)) {
+            return;
+        }
+
+        LOG.info("Starting to refresh tokens regularly from filesystem ...");
+        scheduler.scheduleAtFixedRate(() -> {
+            scanner.run();
+            signalReady();
+        }, initialDelay, configuration.getSchedulingPeriod(),
                 configuration.getSchedulingTimeUnit());
+    }
 
-        // authorizations
-        scheduler.scheduleAtFixedRate(new SecretsHandler(secrets).getFilesystemReader(), 0,
-                configuration.getSchedulingPeriod(), configuration.getSchedulingTimeUnit());
+    private boolean startWatching(final CredentialsDirectoryScanner scanner) {
+        try {
+            // register before the initial read to not miss any change in between
+            watcher = new CredentialsDirectoryWatcher(FileSupplier.getCredentialsDir().toPath(), scanner,
+                    this::signalReady);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Cannot watch credentials directory, falling back to reading it regularly", e);
+            return false;
+        }
+        scanner.run();
+        signalReady();
+        watcher.start();
+        return true;
+    }
 
-        // clients
-        // TODO
-        scheduler.scheduleAtFixedRate(new ClientCredentialsHandler(clientCredentials).getFilesystemReader(), 0,
-                configuration.getSchedulingPeriod(), configuration.getSchedulingTimeUnit());
+    @Override
+    public void stop() {
+        super.stop();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                LOG.warn("Could not stop watching credentials directory", e);
+            }
+        }
     }
 
     //@formatter:off
@@ -25,6 +25,8 @@ public class FilesystemSecretsRefresherConfiguration {
 
     private boolean validateTokensOnStartup = false;
 
+    private boolean watchForChanges = false;
+
     private TokenContentExtractor tokenContentExtractor = new JwtFileSystemTokenContentExtractor();
 
     public FilesystemSecretsRefresherConfiguration(AccessTokensBuilder parent) {
@@ -36,6 +38,19 @@ public class FilesystemSecretsRefresherConfiguration {
         return this;
     }
 
+    /**
+     * Reload credentials as soon as their files change, using a
+     * {@link java.nio.file.WatchService}, instead of rescanning the credentials
+     * directory every scheduling period. Falls back to rescanning if the
+     * directory cannot be watched.
+     *
+     * @return this configuration
+     */
+    public FilesystemSecretsRefresherConfiguration watchForChanges() {
+        this.watchForChanges = true;
+        return this;
+    }
+
     public FilesystemSecretsRefresherConfiguration usingTokenContentExtractor(TokenContentExtractor tokenContentExtractor) {
         this.tokenContentExtractor = requireNonNull(tokenContentExtractor, "'tokenContentExtractor' should never be null");
         return this;
@@ -45,6 +60,10 @@ public class FilesystemSecretsRefresherConfiguration {
         return this.validateTokensOnStartup;
     }
 
+    public boolean isWatchForChanges() {
+        return this.watchForChanges;
+    }
+
     public AccessTokensBuilder done() {
         return this.parent;
     }
@@ -17,26 +17,70 @@ package org.zalando.stups.tokens.fs;
 
 import static java.lang.System.currentTimeMillis;
 import static java.time.Instant.ofEpochSecond;
-import static java.util.Base64.getDecoder;
 import static java.util.Date.from;
 import static java.util.Optional.empty;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zalando.stups.tokens.AccessToken;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
+/**
+ * Reads the expiration (<i>exp</i>) and, if present, the issue time
+ * (<i>iat</i>) or start of validity (<i>nbf</i>) of JWTs. The latter becomes
+ * the {@link AccessToken#getCreationTimestamp() creation timestamp}, never
+ * later than now. The payload is located by index, Base64 decoded (standard or
+ * URL-safe alphabet, with or without padding) into a reusable per-thread
+ * buffer and streamed through a {@link JsonParser} that stops as soon as all
+ * three claims have been found, without splitting the token or building a
+ * JSON tree.
+ */
 public class JwtFileSystemTokenContentExtractor implements TokenContentExtractor {
 
-    private final Logger logger = LoggerFactory.getLogger(JwtFileSystemTokenContentExtractor.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String EXPIRATION = "exp";
+
+    private static final String ISSUED_AT = "iat";
+
+    private static final String NOT_BEFORE = "nbf";
+
+    private static final long NO_CLAIM = Long.MIN_VALUE;
+
+    private static final int EXP = 0;
+
+    private static final int IAT = 1;
+
+    private static final int NBF = 2;
 
-    private final ObjectMapper om = new ObjectMapper();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = i;
+        }
+        BASE64_VALUES['+'] = BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['/'] = BASE64_VALUES['_'] = 63;
+    }
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private static final ThreadLocal<long[]> CLAIMS = ThreadLocal.withInitial(() -> new long[3]);
+
+    private final Logger logger = LoggerFactory.getLogger(JwtFileSystemTokenContentExtractor.class);
 
     @Override
     public AccessToken extract(String token, String type) {
@@ -46,11 +90,20 @@ public class JwtFileSystemTokenContentExtractor implements TokenContentExtractor
     protected Optional<AccessToken> tryJwt(String token, String type) {
         try {
             if (isJwt(token)) {
-                final byte[] decoded = getDecoder().decode(splitToken(token)[1]);
-                final JsonNode node = om.readTree(decoded);
-                long expiration = node.get("exp").asLong(-1L);
-                long initialValidSeconds = expiration - MILLISECONDS.toSeconds(currentTimeMillis());
-                return ofNullable(new AccessToken(token,type, initialValidSeconds, from(ofEpochSecond(expiration))));
+                final int payloadStart = token.indexOf('.') + 1;
+                final long[] claims = CLAIMS.get();
+                readClaims(token, payloadStart, token.indexOf('.', payloadStart), claims);
+                final long expiration = claims[EXP];
+                if (expiration == NO_CLAIM) {
+                    logger.warn("JWT without '{}' claim", EXPIRATION);
+                    return empty();
+                }
+                final long now = currentTimeMillis();
+                final long issued = claims[IAT] != NO_CLAIM ? claims[IAT] : claims[NBF];
+                final long creationTimestamp = issued == NO_CLAIM ? now : Math.min(SECONDS.toMillis(issued), now);
+                long initialValidSeconds = expiration - MILLISECONDS.toSeconds(now);
+                return ofNullable(new JwtAccessToken(token, type, initialValidSeconds,
+                        from(ofEpochSecond(expiration)), creationTimestamp));
             }
             return empty();
         } catch (Exception e) {
@@ -59,12 +112,100 @@ public class JwtFileSystemTokenContentExtractor implements TokenContentExtractor
         }
     }
 
+    /**
+     * Stores the numeric <i>exp</i>, <i>iat</i> and <i>nbf</i> of the payload
+     * into <i>claims</i>, {@link #NO_CLAIM} for each one that is missing.
+     */
+    private static void readClaims(String token, int payloadStart, int payloadEnd, long[] claims)
+            throws IOException {
+        Arrays.fill(claims, NO_CLAIM);
+        byte[] buffer = BUFFER.get();
+        final int maxLength = (payloadEnd - payloadStart) * 3 / 4 + 3;
+        if (buffer.length < maxLength) {
+            buffer = new byte[maxLength];
+            BUFFER.set(buffer);
+        }
+        final int length = decodeBase64(token, payloadStart, payloadEnd, buffer);
+
+        try (final JsonParser parser = JSON_FACTORY.createParser(buffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            int missing = claims.length;
+            while (missing > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                final int claim = claimIndex(parser.getCurrentName());
+                final JsonToken value = parser.nextToken();
+                if (claim >= 0 && value.isNumeric() && claims[claim] == NO_CLAIM) {
+                    claims[claim] = parser.getLongValue();
+                    missing--;
+                }
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static int claimIndex(String name) {
+        if (EXPIRATION.equals(name)) {
+            return EXP;
+        } else if (ISSUED_AT.equals(name)) {
+            return IAT;
+        } else if (NOT_BEFORE.equals(name)) {
+            return NBF;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the characters between <i>start</i> and <i>end</i> in either
+     * Base64 alphabet into <i>target</i>, stopping at padding.
+     *
+     * @return the number of decoded bytes
+     */
+    static int decodeBase64(CharSequence source, int start, int end, byte[] target) {
+        int length = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < end; i++) {
+            final char c = source.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            final int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c));
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                target[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        return length;
+    }
+
     protected boolean isJwt(String token) {
-        return  splitToken(token).length == 3 ? true : false;
+        final int first = token.indexOf('.');
+        final int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        return second > first + 1 && token.indexOf('.', second + 1) < 0;
     }
 
+    /**
+     * Not used for extraction anymore, kept for subclasses.
+     */
     protected String[] splitToken(String token) {
         return token.split("\\.");
     }
 
+    /**
+     * Carries the creation timestamp taken from the JWT.
+     */
+    private static class JwtAccessToken extends AccessToken {
+
+        JwtAccessToken(String token, String type, long initialValidSeconds, Date validUntil,
+                long creationTimestamp) {
+            super(token, type, initialValidSeconds, validUntil, creationTimestamp);
+        }
+    }
+
 }
@@ -15,7 +15,6 @@
  */
 package org.zalando.stups.tokens.fs;
 
-import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.HashMap;
@@ -39,8 +38,8 @@ class SecretsHandler extends AccessTokenHandler {
     }
 
     @Override
-    public boolean test(AccessTokenDto t) {
-        return nonNull(t) && ("Bearer".equals(t.getType()) || "Basic".equals(t.getType()));
+    protected boolean acceptsType(String type) {
+        return "Bearer".equals(type) || "Basic".equals(type);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import static org.zalando.stups.tokens.fs.FileUtils.readContent;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The raw content of a <i>-token-secret</i> file and its <i>-token-type</i>
+ * sibling, read once and shared by all handlers interested in it.
+ */
+final class TokenFile {
+
+    private final String name;
+    private final String secret;
+    private final String type;
+
+    TokenFile(String name, String secret, String type) {
+        this.name = name;
+        this.secret = secret;
+        this.type = type;
+    }
+
+    static TokenFile read(File tokenSecretFile) throws IOException {
+        final String name = tokenSecretFile.getName().replace(AccessTokenHandler.TOKEN_SECRET, "");
+        final String secret = readContent(tokenSecretFile.getAbsolutePath());
+        final String type = readContent(
+                tokenSecretFile.toPath().resolveSibling(name + AccessTokenHandler.TOKEN_TYPE).toString());
+        return new TokenFile(name, secret, type);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getSecret() {
+        return secret;
+    }
+
+    String getType() {
+        return type;
+    }
+}
@@ -15,15 +15,68 @@
  */
 package org.zalando.stups.tokens.mcb;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Minimal Circuit Breaker.
+ * <p>
+ * <b>closed</b>: calls are allowed, consecutive errors are counted. Reaching
+ * {@link MCBConfig#getErrorThreshold()} switches to open. With a
+ * {@link MCBConfig#getSlidingWindowType() sliding window} the failure and slow
+ * call rates of the recent calls are evaluated instead.<br>
+ * <b>open</b>: calls are not allowed until the timeout (timeout base times the
+ * current multiplier, or a random backoff with
+ * {@link MCBConfig#isDecorrelatedJitter()}) has passed, then switches to
+ * half-open.<br>
+ * <b>half-open</b>: exactly one caller of {@link #isClosed()} gets through as
+ * probe. Its success closes the breaker, its error opens it again with the
+ * next multiplier (up to {@link MCBConfig#getMaxMulti()}). A probe that does
+ * not report back within the timeout base is replaced by the next caller.
+ * <p>
+ * The whole state lives in a single {@link AtomicLong} and all transitions are
+ * lock-free compare-and-set operations that do not allocate. Layout, from the
+ * most significant bit: state (2 bits), consecutive errors (10 bits),
+ * multiplier (10 bits), deadline of open/half-open in milliseconds relative to
+ * the creation of the breaker (42 bits, ~139 years).
  * 
  * @author jbellmann
  *
  */
-public class MCB {
+public class MCB implements Named {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MCB.class);
+
+    static final int CLOSED = 0;
+    static final int OPEN = 1;
+    static final int HALF_OPEN = 2;
 
-    private State state;
+    private static final int STATE_SHIFT = 62;
+    private static final int ERRORS_SHIFT = 52;
+    private static final int MULTI_SHIFT = 42;
+    private static final long COUNTER_MASK = (1L << 10) - 1;
+    private static final long UNTIL_MASK = (1L << MULTI_SHIFT) - 1;
+
+    private final MCBConfig config;
+    private final LongSupplier clock;
+    private final long epoch;
+    private final long errorThreshold;
+    private final long maxMulti;
+    private final long timeoutMillis;
+    private final long slowCallDurationMillis;
+    private final SlidingWindow window;
+    private final boolean decorrelatedJitter;
+    private final Consumer<MCBState> transitionListener;
+
+    private volatile long lastSleepMillis;
+
+    private final AtomicLong state = new AtomicLong(pack(CLOSED, 0, 0, 0));
 
     /**
      * Uses defaults from {@link MCBConfig}.
@@ -38,25 +91,262 @@ public class MCB {
      * @param config the configuration
      */
     public MCB(MCBConfig config) {
-        this.state = new Closed(config);
+        this(config, System::currentTimeMillis);
+    }
+
+    /**
+     * Create one with a custom-config that reports its transitions, e.g. to
+     * count them.
+     * 
+     * @param config the configuration
+     * @param transitionListener called with the new state by the caller that
+     *            switched the breaker, must not block
+     */
+    public MCB(MCBConfig config, Consumer<MCBState> transitionListener) {
+        this(config, System::currentTimeMillis, transitionListener);
+    }
+
+    MCB(MCBConfig config, LongSupplier clock) {
+        this(config, clock, null);
+    }
+
+    MCB(MCBConfig config, LongSupplier clock, Consumer<MCBState> transitionListener) {
+        if (config == null) {
+            config = new MCBConfig.Builder().build();
+        }
+        this.config = config;
+        this.clock = clock;
+        this.transitionListener = transitionListener != null ? transitionListener : state -> {
+        };
+        this.epoch = clock.getAsLong();
+        this.errorThreshold = Math.max(1, Math.min(config.getErrorThreshold(), COUNTER_MASK));
+        this.maxMulti = Math.max(1, Math.min(config.getMaxMulti(), COUNTER_MASK));
+        this.timeoutMillis = config.getTimeUnit().toMillis(config.getTimeout());
+        this.slowCallDurationMillis = config.getSlowCallDurationMillis();
+        this.decorrelatedJitter = config.isDecorrelatedJitter();
+        this.window = config.getSlidingWindowType() == null
+                || config.getSlidingWindowType() == MCBConfig.SlidingWindowType.CONSECUTIVE ? null
+                        : new SlidingWindow(config);
     }
 
     public void onError() {
-        this.state.onError();
+        onError(0, TimeUnit.MILLISECONDS);
+    }
 
+    /**
+     * Report a failed call that took the supplied time.
+     * 
+     * @param duration how long the call took
+     * @param unit unit of the duration
+     */
+    public void onError(long duration, TimeUnit unit) {
+        if (window != null && state(state.get()) == CLOSED) {
+            onOutcome(true, unit.toMillis(duration));
+            return;
+        }
+        while (true) {
+            final long current = state.get();
+            final long next;
+            long sleep = 0;
+            switch (state(current)) {
+            case CLOSED:
+                if (window != null) {
+                    // concurrently closed after the check above
+                    onOutcome(true, unit.toMillis(duration));
+                    return;
+                }
+                final long errors = Math.min(errors(current) + 1, COUNTER_MASK);
+                if (errors >= errorThreshold) {
+                    sleep = sleepMillis(1);
+                    next = open(1, sleep);
+                } else {
+                    next = pack(CLOSED, errors, 0, 0);
+                }
+                break;
+            case HALF_OPEN:
+                final long multi = Math.min(multi(current) + 1, maxMulti);
+                sleep = sleepMillis(multi);
+                next = open(multi, sleep);
+                break;
+            default:
+                // we are open and do not expect any errors
+                return;
+            }
+            if (state.compareAndSet(current, next)) {
+                if (state(next) == OPEN) {
+                    onOpened(multi(next), sleep, "");
+                }
+                return;
+            }
+        }
     }
 
     public void onSuccess() {
-        this.state.onSuccess();
+        onSuccess(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Report a successful call that took the supplied time.
+     * 
+     * @param duration how long the call took
+     * @param unit unit of the duration
+     */
+    public void onSuccess(long duration, TimeUnit unit) {
+        if (window != null && state(state.get()) == CLOSED) {
+            onOutcome(false, unit.toMillis(duration));
+            return;
+        }
+        while (true) {
+            final long current = state.get();
+            if (current == pack(CLOSED, 0, 0, 0) || state(current) == OPEN) {
+                return;
+            }
+            if (state.compareAndSet(current, pack(CLOSED, 0, 0, 0))) {
+                if (state(current) == HALF_OPEN) {
+                    if (window != null) {
+                        window.reset();
+                    }
+                    LOG.info("{} SWITCH TO CLOSED", config.getName());
+                    transitionListener.accept(MCBState.CLOSED);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give up the probe granted by {@link #isClosed()} without calling the
+     * protected service, so that the next caller may probe right away. Does
+     * nothing unless the breaker is half-open.
+     */
+    public void release() {
+        while (true) {
+            final long current = state.get();
+            if (state(current) != HALF_OPEN || until(current) == 0) {
+                return;
+            }
+            if (state.compareAndSet(current, pack(HALF_OPEN, 0, multi(current), 0))) {
+                return;
+            }
+        }
     }
 
+    /**
+     * @return whether the caller may call the protected service. In half-open
+     *         state this is <i>true</i> for a single caller only, who is
+     *         expected to report the outcome through {@link #onSuccess()} or
+     *         {@link #onError()}, or to give the probe up through
+     *         {@link #release()}.
+     */
     public boolean isClosed() {
-        this.state = state.switchState();
-        return this.state.isClosed();
+        while (true) {
+            final long current = state.get();
+            if (state(current) == CLOSED) {
+                return true;
+            }
+            final long now = now();
+            if (now < until(current)) {
+                return false;
+            }
+            // open timed out or the half-open probe did not report back, let this caller probe
+            final long next = pack(HALF_OPEN, 0, multi(current), now + timeoutMillis);
+            if (state.compareAndSet(current, next)) {
+                if (state(current) == OPEN) {
+                    LOG.info("{} SWITCH TO HALF_OPEN", config.getName());
+                    transitionListener.accept(MCBState.HALF_OPEN);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void onOutcome(final boolean failure, final long durationMillis) {
+        final boolean slow = durationMillis > 0 && durationMillis >= slowCallDurationMillis;
+        if (!window.record(failure, slow, now())) {
+            return;
+        }
+        final long closed = pack(CLOSED, 0, 0, 0);
+        final long sleep = sleepMillis(1);
+        if (state.compareAndSet(closed, open(1, sleep))) {
+            window.reset();
+            onOpened(1, sleep, ", failure or slow call rate exceeded");
+        }
     }
 
+    @Override
     public String getName() {
-        return this.state.getName();
+        return config.getName();
+    }
+
+    public MCBState getState() {
+        switch (state()) {
+        case OPEN:
+            // still reported as open until the next caller switches to half-open
+            return MCBState.OPEN;
+        case HALF_OPEN:
+            return MCBState.HALF_OPEN;
+        default:
+            return MCBState.CLOSED;
+        }
+    }
+
+    int state() {
+        return state(state.get());
+    }
+
+    private long open(final long multi, final long sleepMillis) {
+        return pack(OPEN, 0, multi, now() + sleepMillis);
+    }
+
+    /**
+     * Multiplier times timeout base, or with decorrelated jitter a random time
+     * between the timeout base and three times the previous sleep, capped at
+     * the max multiplier times the timeout base.
+     */
+    private long sleepMillis(final long multi) {
+        if (!decorrelatedJitter) {
+            return multi * timeoutMillis;
+        }
+        final long previous = multi == 1 ? timeoutMillis : lastSleepMillis;
+        final long upper = Math.max(timeoutMillis, Math.min(previous * 3, maxMulti * timeoutMillis));
+        return ThreadLocalRandom.current().nextLong(timeoutMillis, upper + 1);
+    }
+
+    private void onOpened(final long multi, final long sleepMillis, final String reason) {
+        // only the caller that switched to open gets here, the next probe cannot fail before
+        lastSleepMillis = sleepMillis;
+        if (decorrelatedJitter) {
+            LOG.warn("{} SWITCHED TO OPEN for {} ms{}", config.getName(), sleepMillis, reason);
+        } else {
+            LOG.warn("{} SWITCHED TO OPEN for {} {}{}", config.getName(), multi * config.getTimeout(),
+                    config.getTimeUnit(), reason);
+        }
+        transitionListener.accept(MCBState.OPEN);
+    }
+
+    private long now() {
+        return Math.max(0, clock.getAsLong() - epoch);
+    }
+
+    private static long pack(final int state, final long errors, final long multi, final long until) {
+        return ((long) state << STATE_SHIFT) | (errors << ERRORS_SHIFT) | (multi << MULTI_SHIFT)
+                | Math.min(until, UNTIL_MASK);
+    }
+
+    private static int state(final long packed) {
+        return (int) (packed >>> STATE_SHIFT);
+    }
+
+    private static long errors(final long packed) {
+        return (packed >>> ERRORS_SHIFT) & COUNTER_MASK;
+    }
+
+    private static long multi(final long packed) {
+        return (packed >>> MULTI_SHIFT) & COUNTER_MASK;
+    }
+
+    private static long until(final long packed) {
+        return packed & UNTIL_MASK;
     }
 
 }
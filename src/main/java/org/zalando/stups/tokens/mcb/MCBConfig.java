@@ -31,17 +31,57 @@ public class MCBConfig {
     private final int maxMulti;
     private final TimeUnit timeUnit;
     private final String name;
+    private final SlidingWindowType slidingWindowType;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationMillis;
+    private final boolean decorrelatedJitter;
 
-    private MCBConfig(int errorThreshold, int timeout, int maxMulti, TimeUnit timeUnit, String name) {
-        this.errorThreshold = errorThreshold;
-        this.timeout = timeout;
-        this.maxMulti = maxMulti;
-        this.timeUnit = timeUnit;
-        this.name = name;
+    private MCBConfig(Builder builder) {
+        this.errorThreshold = builder.threshold;
+        this.timeout = builder.timeout;
+        this.maxMulti = builder.maxMulti;
+        this.timeUnit = builder.timeUnit;
+        this.name = builder.name;
+        this.slidingWindowType = builder.slidingWindowType;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationMillis = builder.slowCallDurationMillis;
+        this.decorrelatedJitter = builder.decorrelatedJitter;
     }
 
     /**
-     * How many errors before MCB switches to {@link Open}-state.
+     * How outcomes are aggregated in closed-state.
+     */
+    public enum SlidingWindowType {
+
+        /**
+         * Open after {@link MCBConfig#getErrorThreshold()} consecutive errors,
+         * any success resets the count.
+         */
+        CONSECUTIVE,
+
+        /**
+         * Open once the failure or slow call rate of the last
+         * {@link MCBConfig#getSlidingWindowSize()} calls exceeds its threshold.
+         */
+        COUNT_BASED,
+
+        /**
+         * Open once the failure or slow call rate of the calls in the last
+         * {@link MCBConfig#getSlidingWindowSize()} seconds exceeds its
+         * threshold.
+         */
+        TIME_BASED
+    }
+
+    /**
+     * How many consecutive errors before MCB switches to open-state, at most
+     * 1023.
      * 
      * @return 5
      */
@@ -50,7 +90,8 @@ public class MCBConfig {
     }
 
     /**
-     * Timeout base for {@link Open}.
+     * Timeout base for open-state, also the time a half-open probe has to
+     * report its outcome.
      * 
      * @return 30
      */
@@ -59,7 +100,7 @@ public class MCBConfig {
     }
 
     /**
-     * The max multiplier for the timeout in {@link Open}-state.
+     * The max multiplier for the timeout in open-state, at most 1023.
      * 
      * @return 40
      */
@@ -85,6 +126,75 @@ public class MCBConfig {
         return name;
     }
 
+    /**
+     * How outcomes are aggregated in closed-state.
+     * 
+     * @return SlidingWindowType.CONSECUTIVE
+     */
+    public SlidingWindowType getSlidingWindowType() {
+        return slidingWindowType;
+    }
+
+    /**
+     * Number of calls or seconds in the sliding window, ignored for
+     * {@link SlidingWindowType#CONSECUTIVE}.
+     * 
+     * @return 20
+     */
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * How many calls the sliding window needs before the rates are evaluated.
+     * 
+     * @return 10
+     */
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    /**
+     * Failure rate in percent at which the sliding window opens the breaker.
+     * 
+     * @return 50
+     */
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Slow call rate in percent at which the sliding window opens the breaker.
+     * 
+     * @return 100
+     */
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Calls taking at least this long count as slow, whether they succeed or
+     * not. Only outcomes reported with a duration can be slow.
+     * 
+     * @return 60000
+     */
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    /**
+     * Whether open-state lasts a random time between the timeout base and three
+     * times the previous open-state instead of multiplier times timeout base,
+     * so breakers of many instances that opened together do not probe at the
+     * same instant. Still capped at {@link #getMaxMulti()} times the timeout
+     * base.
+     * 
+     * @return false
+     */
+    public boolean isDecorrelatedJitter() {
+        return decorrelatedJitter;
+    }
+
     public static class Builder {
         private static final AtomicLong nameCounter = new AtomicLong(0);
         private int threshold = 5;
@@ -92,6 +202,38 @@ public class MCBConfig {
         private int maxMulti = 40;
         private TimeUnit timeUnit = TimeUnit.SECONDS;
         private String name = "MCB-" + nameCounter.getAndIncrement();
+        private SlidingWindowType slidingWindowType = SlidingWindowType.CONSECUTIVE;
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private long slowCallDurationMillis = TimeUnit.MINUTES.toMillis(1);
+        private boolean decorrelatedJitter = false;
+
+        public Builder() {
+        }
+
+        /**
+         * Start with the settings of an existing configuration, e.g. to derive
+         * differently named breakers from it.
+         * 
+         * @param template
+         *            the configuration to copy
+         */
+        public Builder(MCBConfig template) {
+            this.threshold = template.errorThreshold;
+            this.timeout = template.timeout;
+            this.maxMulti = template.maxMulti;
+            this.timeUnit = template.timeUnit;
+            this.name = template.name;
+            this.slidingWindowType = template.slidingWindowType;
+            this.slidingWindowSize = template.slidingWindowSize;
+            this.minimumNumberOfCalls = template.minimumNumberOfCalls;
+            this.failureRateThreshold = template.failureRateThreshold;
+            this.slowCallRateThreshold = template.slowCallRateThreshold;
+            this.slowCallDurationMillis = template.slowCallDurationMillis;
+            this.decorrelatedJitter = template.decorrelatedJitter;
+        }
 
         public Builder withErrorThreshold(int errorThreshold){
             this.threshold = errorThreshold;
@@ -118,8 +260,68 @@ public class MCBConfig {
             return this;
         }
 
+        /**
+         * Open on the failure and slow call rates of a sliding window instead
+         * of on consecutive errors.
+         * 
+         * @param type
+         *            how the window is measured
+         * @param size
+         *            number of calls or seconds in the window, a count-based
+         *            window must hold at least the
+         *            {@link #withMinimumNumberOfCalls(int) minimum number of
+         *            calls}
+         * @return this builder
+         */
+        public Builder withSlidingWindow(SlidingWindowType type, int size) {
+            if (type == null) {
+                throw new IllegalArgumentException("'type' should never be null");
+            }
+            if (type != SlidingWindowType.CONSECUTIVE && size < 1) {
+                throw new IllegalArgumentException("'size' should be positive");
+            }
+            this.slidingWindowType = type;
+            this.slidingWindowSize = size;
+            return this;
+        }
+
+        public Builder withMinimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        public Builder withFailureRateThreshold(float percent) {
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        public Builder withSlowCallRateThreshold(float percent) {
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        public Builder withSlowCallDuration(long duration, TimeUnit unit) {
+            this.slowCallDurationMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder withDecorrelatedJitter(boolean decorrelatedJitter) {
+            this.decorrelatedJitter = decorrelatedJitter;
+            return this;
+        }
+
+        /**
+         * @return the configuration
+         * @throws IllegalArgumentException
+         *             if a count-based window is smaller than the minimum
+         *             number of calls, so the breaker could never open
+         */
         public MCBConfig build() {
-            return new MCBConfig(threshold, timeout, maxMulti, timeUnit, name);
+            if (slidingWindowType == SlidingWindowType.COUNT_BASED && minimumNumberOfCalls > slidingWindowSize) {
+                throw new IllegalArgumentException("'minimumNumberOfCalls' (" + minimumNumberOfCalls
+                        + ") should not exceed the 'size' of a count-based sliding window (" + slidingWindowSize + ")");
+            }
+            return new MCBConfig(this);
         }
 
     }
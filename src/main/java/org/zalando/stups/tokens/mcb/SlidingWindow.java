@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.mcb;
+
+/**
+ * Outcomes of the most recent calls, either the last <i>size</i> calls or the
+ * calls of the last <i>size</i> seconds in one-second buckets.
+ * <p>
+ * Only outcomes are recorded here, so {@link MCB#isClosed()} stays lock-free.
+ */
+class SlidingWindow {
+
+    private final boolean timeBased;
+    private final int size;
+    private final long minimumNumberOfCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+
+    private final int[] calls;
+    private final int[] failures;
+    private final int[] slowCalls;
+
+    private long lastKey = -1;
+    private long sequence;
+    private long totalCalls;
+    private long totalFailures;
+    private long totalSlowCalls;
+
+    SlidingWindow(final MCBConfig config) {
+        this.timeBased = config.getSlidingWindowType() == MCBConfig.SlidingWindowType.TIME_BASED;
+        this.size = config.getSlidingWindowSize();
+        this.minimumNumberOfCalls = Math.max(1, config.getMinimumNumberOfCalls());
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+        this.calls = new int[size];
+        this.failures = new int[size];
+        this.slowCalls = new int[size];
+    }
+
+    /**
+     * @param nowMillis milliseconds since the creation of the breaker
+     * @return whether the failure rate or the slow call rate now exceed their
+     *         thresholds
+     */
+    synchronized boolean record(final boolean failure, final boolean slow, final long nowMillis) {
+        final long key = timeBased ? nowMillis / 1000 : sequence++;
+        final int index = advanceTo(key);
+        calls[index]++;
+        totalCalls++;
+        if (failure) {
+            failures[index]++;
+            totalFailures++;
+        }
+        if (slow) {
+            slowCalls[index]++;
+            totalSlowCalls++;
+        }
+        if (totalCalls < minimumNumberOfCalls) {
+            return false;
+        }
+        return totalFailures * 100f / totalCalls >= failureRateThreshold
+                || totalSlowCalls * 100f / totalCalls >= slowCallRateThreshold;
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < size; i++) {
+            evict(i);
+        }
+        lastKey = -1;
+    }
+
+    /**
+     * Evicts all buckets that fell out of the window, at most once around.
+     */
+    private int advanceTo(final long key) {
+        if (key > lastKey) {
+            final long from = Math.max(lastKey + 1, key - size + 1);
+            for (long k = from; k <= key; k++) {
+                final int index = (int) (k % size);
+                evict(index);
+            }
+            lastKey = key;
+        }
+        // a clock going backwards counts into the current bucket
+        return (int) (lastKey % size);
+    }
+
+    private void evict(final int index) {
+        totalCalls -= calls[index];
+        totalFailures -= failures[index];
+        totalSlowCalls -= slowCalls[index];
+        calls[index] = 0;
+        failures[index] = 0;
+        slowCalls[index] = 0;
+    }
+
+}
@@ -15,6 +15,15 @@
  */
 package org.zalando.stups.tokens.mcb;
 
+/**
+ * State of the former state-object implementation of {@link MCB}.
+ * 
+ * @deprecated {@link MCB} keeps its state in a single atomic value and no
+ *             longer uses this interface, see {@link MCB#getState()} and
+ *             {@link MCBState} to observe it. Kept for source compatibility
+ *             only, will be removed with the next major version.
+ */
+@Deprecated
 public interface State extends Named {
 
     void onError();
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifies a version of a file by modification time, size and file key
+ * (the inode on Unix), so unchanged files do not have to be read again. A
+ * file replaced by a new one, e.g. through a symlink swap, gets a new file
+ * key even if time and size stay the same. Symlinks are followed.
+ */
+public final class FileFingerprint {
+
+    private final long lastModifiedNanos;
+    private final long size;
+    private final Object fileKey;
+
+    private FileFingerprint(long lastModifiedNanos, long size, Object fileKey) {
+        this.lastModifiedNanos = lastModifiedNanos;
+        this.size = size;
+        this.fileKey = fileKey;
+    }
+
+    public static FileFingerprint of(Path file) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new FileFingerprint(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size(),
+                attributes.fileKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileFingerprint)) {
+            return false;
+        }
+        final FileFingerprint other = (FileFingerprint) o;
+        return lastModifiedNanos == other.lastModifiedNanos && size == other.size
+                && java.util.Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return java.util.Objects.hash(lastModifiedNanos, size, fileKey);
+    }
+
+    @Override
+    public String toString() {
+        return "FileFingerprint{lastModifiedNanos=" + lastModifiedNanos + ", size=" + size + ", fileKey=" + fileKey
+                + "}";
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with logarithmic buckets: every power of two is split into
+ * 16 linear sub-buckets, so recorded values are kept with a relative error of
+ * at most 1/16 (6.25 %) over the whole range of {@code long} nanoseconds.
+ * <p>
+ * The buckets are a fixed {@link AtomicLongArray} of 960 counters (7.5 KiB),
+ * recording is a lock-free increment that does not allocate. A
+ * {@link #snapshot()} copies the counters and can be queried for percentiles
+ * without blocking concurrent recordings.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration, negative ones are recorded as 0.
+     * 
+     * @param nanos the duration in nanoseconds, e.g. the difference of two
+     *            {@link System#nanoTime()} calls
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        // max first, so a snapshot never sees a value in a bucket above its max
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+        buckets.incrementAndGet(index(value));
+    }
+
+    public void record(final long duration, final TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, max.get());
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value that falls into the bucket with the given
+     *         index
+     */
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+
+    /**
+     * Point-in-time copy of a {@link LatencyHistogram}, all values in
+     * nanoseconds.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        Snapshot(final long[] counts, final long max) {
+            this.counts = counts;
+            long count = 0;
+            for (final long c : counts) {
+                count += c;
+            }
+            this.count = count;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile between 0 and 100, e.g. 99.9
+         * @return the value below or at which the given percentage of the
+         *         recorded values fall, within the precision of the buckets,
+         *         or 0 if nothing has been recorded
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("'percentile' should be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", p50=" + getP50() + "ns, p99=" + getP99() + "ns, p999=" + getP999()
+                    + "ns, max=" + max + "ns}";
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled with <i>permitsPerSecond</i> holding at most
+ * <i>burst</i> permits, starting full.
+ * <p>
+ * Kept as the theoretical arrival time of the next permit (generic cell rate
+ * algorithm) in a single {@link AtomicLong}, so acquiring is a lock-free
+ * compare-and-set that never blocks. Callers that do not get a permit are
+ * expected to try again later, see {@link #nanosUntilPermit()}.
+ */
+public final class TokenBucket {
+
+    private final LongSupplier nanoClock;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final double permitsPerSecond;
+    private final int burst;
+
+    private final AtomicLong nextArrival;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("'permitsPerSecond' should be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("'burst' should be positive");
+        }
+        this.nanoClock = nanoClock;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.nextArrival = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * @return whether a permit has been taken from the bucket
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            final long now = nanoClock.getAsLong();
+            final long current = nextArrival.get();
+            // an idle bucket is full, but not fuller
+            final long next = (current - now < 0 ? now : current) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (nextArrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return how long until {@link #tryAcquire()} can succeed, 0 if it can
+     *         right now
+     */
+    public long nanosUntilPermit() {
+        final long now = nanoClock.getAsLong();
+        return Math.max(0, nextArrival.get() + intervalNanos - burstNanos - now);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket{permitsPerSecond=" + permitsPerSecond + ", burst=" + burst + "}";
+    }
+}
@@ -16,6 +16,7 @@
 package org.zalando.stups.tokens;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import org.assertj.core.api.Assertions;
@@ -58,6 +59,54 @@ public class AbstractAccessTokenRefresherTest {
 
     }
 
+    @Test
+    public void lookupDoesNotThrow() {
+        TokenRefresherConfiguration configuration = Mockito.mock(TokenRefresherConfiguration.class);
+        AbstractAccessTokenRefresher refresher = new TestTokenRefresher(configuration);
+        AccessToken valid = new AccessToken("valid", "Bearer", 3600, new Date(System.currentTimeMillis() + 3600000));
+        AccessToken expired = new AccessToken("expired", "Bearer", 3600, new Date(System.currentTimeMillis() - 1000));
+        refresher.accessTokens.put("valid", valid);
+        refresher.accessTokens.put("expired", expired);
+
+        AccessTokenLookup lookup = refresher.lookup("valid");
+        Assertions.assertThat(lookup.getStatus()).isEqualTo(AccessTokenLookup.Status.AVAILABLE);
+        Assertions.assertThat(lookup.getAccessToken()).isSameAs(valid);
+        Assertions.assertThat(refresher.find("valid")).contains("valid");
+
+        lookup = refresher.lookup("expired");
+        Assertions.assertThat(lookup.getStatus()).isEqualTo(AccessTokenLookup.Status.EXPIRED);
+        Assertions.assertThat(lookup.isAvailable()).isFalse();
+        Assertions.assertThat(lookup.getAccessToken()).isSameAs(expired);
+        Assertions.assertThat(refresher.findAccessToken("expired")).isEmpty();
+
+        lookup = refresher.lookup("four");
+        Assertions.assertThat(lookup.getStatus()).isEqualTo(AccessTokenLookup.Status.MISSING);
+        Assertions.assertThat(lookup.getAccessToken()).isNull();
+        Assertions.assertThat(refresher.find("four")).isEmpty();
+    }
+
+    @Test
+    public void getAccessTokenDoesNotAllocate() {
+        TokenRefresherConfiguration configuration = Mockito.mock(TokenRefresherConfiguration.class);
+        // the default listener of the builder, with trace logging enabled for the tests
+        Mockito.when(configuration.getMetricsListener()).thenReturn(new DebugLogMetricsListener());
+        AbstractAccessTokenRefresher refresher = new TestTokenRefresher(configuration);
+        refresher.accessTokens.put("one", new AccessToken("DSAFDASASDFDA", "Bearer", 3600,
+                new Date(System.currentTimeMillis() + 3600000)));
+
+        Assertions.assertThat(lookup(refresher, 1_000)).isEqualTo(13_000);
+        // one Date per lookup would be ~24MB, allow some noise from the measurement itself
+        Allocations.assertAllocatesLessThan(() -> lookup(refresher, 1_000_000), 64 * 1024);
+    }
+
+    private static int lookup(AbstractAccessTokenRefresher refresher, int times) {
+        int length = 0;
+        for (int i = 0; i < times; i++) {
+            length += refresher.getAccessToken("one").getToken().length();
+        }
+        return length;
+    }
+
     static class TestTokenRefresher extends AbstractAccessTokenRefresher {
 
         private static final Logger LOG = LoggerFactory.getLogger(TestTokenRefresher.class);
@@ -19,8 +19,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.assertj.core.api.Assertions;
 import org.junit.After;
@@ -29,6 +43,8 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.mockito.internal.util.io.IOUtil;
+import org.zalando.stups.tokens.mcb.MCBConfig;
+import org.zalando.stups.tokens.mcb.MCBState;
 
 public class AccessTokenRefresherRunTest {
 
@@ -79,7 +95,7 @@ public class AccessTokenRefresherRunTest {
 		                                               .manageToken("TR_TEST_2")
                                                        .done();
 
-		HttpProvider httpProvider = Mockito.mock(HttpProvider.class);
+		HttpProvider httpProvider = mockHttpProvider();
 
 		Mockito.when(hpf.create(Mockito.any(ClientCredentials.class), Mockito.any(UserCredentials.class),
 				Mockito.any(URI.class), Mockito.any(HttpConfig.class))).thenReturn(httpProvider);
@@ -123,7 +139,7 @@ public class AccessTokenRefresherRunTest {
 		final UserCredentialsProvider userCredentialsProvider = Mockito.mock(UserCredentialsProvider.class);
 		Mockito.when(userCredentialsProvider.get()).thenReturn(new NoopUserCredentials());
 
-		final HttpProvider httpProvider = Mockito.mock(HttpProvider.class);
+		final HttpProvider httpProvider = mockHttpProvider();
 		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
 				.thenReturn(new AccessToken("123456789", "BEARER", 0, new Date()));
 
@@ -145,4 +161,393 @@ public class AccessTokenRefresherRunTest {
 
 		Mockito.verify(clientCredentialsProvider, Mockito.atLeast(2)).get();
 	}
+
+	/**
+	 * Verifies that with a refresh parallelism greater than one a refresh run
+	 * takes roughly one round-trip to the token endpoint instead of one per token.
+	 */
+	@Test
+	public void refreshesTokensConcurrently() throws UnsupportedEncodingException {
+		final ClientCredentialsProvider clientCredentialsProvider = Mockito.mock(ClientCredentialsProvider.class);
+		Mockito.when(clientCredentialsProvider.get()).thenReturn(new SimpleClientCredentials("name", "id", "secret"));
+
+		final UserCredentialsProvider userCredentialsProvider = Mockito.mock(UserCredentialsProvider.class);
+		Mockito.when(userCredentialsProvider.get()).thenReturn(new NoopUserCredentials());
+
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class))).thenAnswer(invocation -> {
+			TimeUnit.MILLISECONDS.sleep(500);
+			return new AccessToken("123456789", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000));
+		});
+
+		final HttpProviderFactory httpProviderFactory = Mockito.mock(HttpProviderFactory.class);
+		Mockito.when(httpProviderFactory.create(Mockito.any(ClientCredentials.class),
+				Mockito.any(UserCredentials.class), Mockito.any(URI.class), Mockito.any(HttpConfig.class)))
+				.thenReturn(httpProvider);
+
+		final AccessTokensBuilder builder = Tokens.createAccessTokensWithUri(uri).refreshParallelism(4)
+				.usingClientCredentialsProvider(clientCredentialsProvider)
+				.usingUserCredentialsProvider(userCredentialsProvider).usingHttpProviderFactory(httpProviderFactory)
+				.manageToken("one").done().manageToken("two").done().manageToken("three").done()
+				.manageToken("four").done();
+
+		final AccessTokenRefresher refresher = new AccessTokenRefresher(builder);
+		accessTokens = refresher;
+
+		final long start = System.currentTimeMillis();
+		refresher.run();
+		final long duration = System.currentTimeMillis() - start;
+
+		Assertions.assertThat(duration).isLessThan(1500);
+		for (String tokenId : new String[] { "one", "two", "three", "four" }) {
+			Assertions.assertThat(refresher.get(tokenId)).isEqualTo("123456789");
+		}
+	}
+
+	/**
+	 * Verifies that tokens are refreshed when they reach the refresh threshold, not
+	 * when the scheduling period elapses.
+	 */
+	@Test
+	public void refreshesWhenDueIndependentOfSchedulingPeriod() throws UnsupportedEncodingException,
+			InterruptedException {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenAnswer(invocation -> new AccessToken("123456789", "BEARER", 2,
+						new Date(System.currentTimeMillis() + 2000)));
+
+		accessTokens = builderFor(httpProvider).schedulingPeriod(1).schedulingTimeUnit(TimeUnit.HOURS)
+				.refreshPercentLeft(40).manageToken("shortlived").done().start();
+
+		TimeUnit.MILLISECONDS.sleep(2600);
+
+		// initial fetch and two refreshes at 40% left, i.e. every 1.2 seconds
+		Mockito.verify(httpProvider, Mockito.atLeast(3)).createToken(Mockito.any(AccessTokenConfiguration.class));
+	}
+
+	/**
+	 * Verifies that an invalidated token is fetched again right away.
+	 */
+	@Test
+	public void refreshesInvalidatedTokenImmediately() throws UnsupportedEncodingException, InterruptedException {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("first", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)))
+				.thenReturn(new AccessToken("second", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)));
+
+		accessTokens = builderFor(httpProvider).manageToken("invalidated").done().start();
+		Assertions.assertThat(accessTokens.get("invalidated")).isEqualTo("first");
+
+		accessTokens.invalidate("invalidated");
+		TimeUnit.MILLISECONDS.sleep(500);
+
+		Assertions.assertThat(accessTokens.get("invalidated")).isEqualTo("second");
+	}
+
+	@Test
+	public void coalescesConcurrentOnDemandRefreshes() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class))).thenAnswer(invocation -> {
+			TimeUnit.MILLISECONDS.sleep(200);
+			return new AccessToken("on-demand", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000));
+		});
+
+		// not started, so the only way to get a token is refreshing on demand
+		final AbstractAccessTokenRefresher refresher = builderFor(httpProvider).refreshOnDemand(5, TimeUnit.SECONDS)
+				.manageToken("lazy").done().getAccessTokenRefresher();
+		accessTokens = refresher;
+
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(callers.submit(() -> refresher.get("lazy")));
+			}
+			for (Future<String> result : results) {
+				Assertions.assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("on-demand");
+			}
+		} finally {
+			callers.shutdownNow();
+		}
+
+		Mockito.verify(httpProvider, Mockito.times(1)).createToken(Mockito.any(AccessTokenConfiguration.class));
+	}
+
+	/**
+	 * Verifies that a token the endpoint keeps rejecting only opens its own breaker.
+	 */
+	@Test
+	public void opensBreakerOfRejectedTokenOnly() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class))).thenAnswer(invocation -> {
+			final AccessTokenConfiguration tokenConfig = invocation.getArgument(0);
+			if ("rejected".equals(tokenConfig.getTokenId())) {
+				throw new AccessTokenEndpointException("wrapped", AccessTokenEndpointException.from(400, "invalid_scope"));
+			}
+			return new AccessToken("healthy", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000));
+		});
+
+		accessTokens = builderFor(httpProvider)
+				.tokenRefresherMcbConfig(new MCBConfig.Builder().withErrorThreshold(1).withTimeout(1).withTimeUnit(TimeUnit.HOURS).build())
+				.manageToken("rejected").done().manageToken("healthy").done().start();
+
+		final CircuitBreakers breakers = (CircuitBreakers) accessTokens;
+		Assertions.assertThat(breakers.getState("rejected")).isEqualTo(MCBState.OPEN);
+		Assertions.assertThat(breakers.getState("healthy")).isEqualTo(MCBState.CLOSED);
+		Assertions.assertThat(breakers.getTransportState()).isEqualTo(MCBState.CLOSED);
+		Assertions.assertThat(breakers.getState("unknown")).isNull();
+		Assertions.assertThat(accessTokens.get("healthy")).isEqualTo("healthy");
+
+		accessTokens.invalidate("healthy");
+		TimeUnit.MILLISECONDS.sleep(500);
+		Mockito.verify(httpProvider, Mockito.times(2)).createToken(Mockito.argThat(c -> "healthy".equals(c.getTokenId())));
+		Mockito.verify(httpProvider, Mockito.times(1)).createToken(Mockito.argThat(c -> "rejected".equals(c.getTokenId())));
+	}
+
+	@Test
+	public void opensTransportBreakerOnServerErrors() throws UnsupportedEncodingException {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenThrow(AccessTokenEndpointException.from(503, null));
+
+		accessTokens = builderFor(httpProvider)
+				.tokenRefresherMcbConfig(new MCBConfig.Builder().withErrorThreshold(1).withTimeout(1).withTimeUnit(TimeUnit.HOURS).build())
+				.manageToken("unavailable").done().start();
+
+		final CircuitBreakers breakers = (CircuitBreakers) accessTokens;
+		Assertions.assertThat(breakers.getTransportState()).isEqualTo(MCBState.OPEN);
+		Assertions.assertThat(breakers.getState("unavailable")).isEqualTo(MCBState.CLOSED);
+	}
+
+	/**
+	 * Verifies that refreshes beyond the rate limit are postponed, not dropped.
+	 */
+	@Test
+	public void postponesRefreshesBeyondRateLimit() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("limited", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)));
+		final MetricsListener metricsListener = Mockito.mock(MetricsListener.class,
+				Mockito.withSettings().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+
+		accessTokens = builderFor(httpProvider).metricsListener(metricsListener).tokenEndpointRateLimit(4, 1)
+				.manageToken("first").done().manageToken("second").done().manageToken("third").done().start();
+
+		Mockito.verify(httpProvider, Mockito.times(1)).createToken(Mockito.any(AccessTokenConfiguration.class));
+		Mockito.verify(metricsListener, Mockito.times(2)).submitToCounter("tokens.refresher.throttled", 1);
+
+		TimeUnit.MILLISECONDS.sleep(1500);
+		Assertions.assertThat(accessTokens.get("first")).isEqualTo("limited");
+		Assertions.assertThat(accessTokens.get("second")).isEqualTo("limited");
+		Assertions.assertThat(accessTokens.get("third")).isEqualTo("limited");
+		Mockito.verify(httpProvider, Mockito.times(3)).createToken(Mockito.any(AccessTokenConfiguration.class));
+	}
+
+	@Test
+	public void reportsCountersGaugesAndHistograms() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("counted", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)));
+		final Map<String, Long> counters = new ConcurrentHashMap<>();
+		final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+		final List<Long> histogram = new CopyOnWriteArrayList<>();
+		final MetricsListener metricsListener = new MetricsListener() {
+
+			@Override
+			public void submitToTimer(final String key, final long time) {
+			}
+
+			@Override
+			public void submitToCounter(final String key, final long delta) {
+				counters.merge(key, delta, Long::sum);
+			}
+
+			@Override
+			public void registerGauge(final String key, final LongSupplier gauge) {
+				gauges.put(key, gauge);
+			}
+
+			@Override
+			public Histogram histogram(final String key) {
+				return key.equals("tokens.refresher.expires_in") ? histogram::add : value -> {
+				};
+			}
+		};
+
+		accessTokens = builderFor(httpProvider).metricsListener(metricsListener).manageToken("counted").done()
+				.start();
+		Assertions.assertThat(gauges.get("tokens.seconds_to_expiry.counted").getAsLong()).isBetween(3590L, 3600L);
+		accessTokens.get("counted");
+		accessTokens.lookup("counted");
+		try {
+			accessTokens.get("unknown");
+		} catch (AccessTokenUnavailableException e) {
+			// expected
+		}
+
+		Assertions.assertThat(counters).containsEntry("tokens.refresher.attempts", 1L)
+				.containsEntry("tokens.lookup.hit", 2L).containsEntry("tokens.lookup.miss", 1L)
+				.doesNotContainKey("tokens.lookup.expired");
+		Assertions.assertThat(histogram).containsExactly(3600L);
+	}
+
+	@Test
+	public void keepsLatenciesOfTokenEndpoint() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("timed", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)))
+				.thenThrow(AccessTokenEndpointException.from(503, null));
+
+		accessTokens = builderFor(httpProvider).manageToken("first").done().manageToken("second").done().start();
+
+		final EndpointLatencies latencies = (EndpointLatencies) accessTokens;
+		Assertions.assertThat(latencies.getLatencySnapshots()).containsOnlyKeys("tokens.refresher.success",
+				"tokens.refresher.failure");
+		Assertions.assertThat(latencies.getLatencySnapshot("tokens.refresher.success").getCount()).isEqualTo(1);
+		Assertions.assertThat(latencies.getLatencySnapshot("tokens.refresher.failure").getCount()).isEqualTo(1);
+		Assertions.assertThat(latencies.getLatencySnapshot("tokens.refresher.failure").getP999()).isPositive();
+	}
+
+	@Test
+	public void servesTokensOfSnapshotAfterRestart() throws Exception {
+		final File file = new File(tempFolder.getRoot(), "tokens.snapshot");
+		final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("warm", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)));
+
+		builderFor(httpProvider).tokenSnapshot(file, key).manageToken("warm").done().start().stop();
+		Assertions.assertThat(file).exists();
+
+		final HttpProvider unavailable = mockHttpProvider();
+		Mockito.when(unavailable.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenThrow(AccessTokenEndpointException.from(503, null));
+		accessTokens = builderFor(unavailable).tokenSnapshot(file, key).manageToken("warm").done().start();
+
+		Assertions.assertThat(accessTokens.get("warm")).isEqualTo("warm");
+		Mockito.verify(unavailable, Mockito.never()).createToken(Mockito.any(AccessTokenConfiguration.class));
+	}
+
+	@Test
+	public void keepsFixedTokensOutOfSnapshot() throws Exception {
+		final File file = new File(tempFolder.getRoot(), "tokens.snapshot");
+		final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+		System.setProperty("OAUTH2_ACCESS_TOKENS", "warm=fixed-value");
+		builderFor(mockHttpProvider()).tokenSnapshot(file, key).manageToken("warm").done().start().stop();
+		System.clearProperty("OAUTH2_ACCESS_TOKENS");
+
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenReturn(new AccessToken("fresh", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000)));
+		accessTokens = builderFor(httpProvider).tokenSnapshot(file, key).manageToken("warm").done().start();
+
+		Assertions.assertThat(accessTokens.get("warm")).isEqualTo("fresh");
+	}
+
+	@Test
+	public void startsWithoutWaitingForTokens() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class))).thenAnswer(invocation -> {
+			release.await();
+			return new AccessToken("async", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000));
+		});
+
+		final AsyncAccessTokens tokens = builderFor(httpProvider).manageToken("first").done().manageToken("second")
+				.done().startAsync();
+		accessTokens = tokens;
+
+		Assertions.assertThat(tokens.whenReady("first")).isNotDone();
+		Assertions.assertThat(tokens.lookup("first").isAvailable()).isFalse();
+		Assertions.assertThat(tokens.awaitReady(50, TimeUnit.MILLISECONDS)).isFalse();
+
+		release.countDown();
+		Assertions.assertThat(tokens.awaitReady(5, TimeUnit.SECONDS)).isTrue();
+		Assertions.assertThat(tokens.whenReady("second").get().getToken()).isEqualTo("async");
+		Assertions.assertThat(tokens.get("first")).isEqualTo("async");
+	}
+
+	@Test
+	public void fetchesAllTokensAtOnceOnAsyncStart() throws Exception {
+		// each request only completes once all three are in flight
+		final CountDownLatch inFlight = new CountDownLatch(3);
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class))).thenAnswer(invocation -> {
+			inFlight.countDown();
+			inFlight.await(5, TimeUnit.SECONDS);
+			return new AccessToken("async", "BEARER", 3600, new Date(System.currentTimeMillis() + 3600000));
+		});
+
+		final AsyncAccessTokens tokens = builderFor(httpProvider).manageToken("first").done().manageToken("second")
+				.done().manageToken("third").done().startAsync();
+		accessTokens = tokens;
+
+		Assertions.assertThat(tokens.awaitReady(4, TimeUnit.SECONDS)).isTrue();
+		Mockito.verify(httpProvider, Mockito.times(3)).createToken(Mockito.any(AccessTokenConfiguration.class));
+	}
+
+	@Test
+	public void failsPendingReadinessOnStop() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenThrow(AccessTokenEndpointException.from(503, null));
+
+		final AsyncAccessTokens tokens = builderFor(httpProvider).manageToken("unavailable").done().startAsync();
+		final CompletableFuture<AccessToken> ready = tokens.whenReady("unavailable");
+		tokens.stop();
+
+		Assertions.assertThat(ready).isCompletedExceptionally();
+		Assertions.assertThat(tokens.awaitReady(1, TimeUnit.SECONDS)).isFalse();
+	}
+
+	@Test
+	public void failsReadinessRequestedAfterStop() throws Exception {
+		final HttpProvider httpProvider = mockHttpProvider();
+		Mockito.when(httpProvider.createToken(Mockito.any(AccessTokenConfiguration.class)))
+				.thenThrow(AccessTokenEndpointException.from(503, null));
+
+		final AsyncAccessTokens tokens = builderFor(httpProvider).manageToken("unavailable").done().startAsync();
+		tokens.stop();
+
+		Assertions.assertThat(tokens.whenReady("unavailable")).isCompletedExceptionally();
+		final long start = System.nanoTime();
+		Assertions.assertThat(tokens.awaitReady(10, TimeUnit.SECONDS)).isFalse();
+		Assertions.assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+	}
+
+	@Test
+	public void keepsSuppliedHttpProviderFactoryOpenOnStop() throws Exception {
+		final ClosableHttpProviderFactory shared = Mockito.mock(ClosableHttpProviderFactory.class);
+		Mockito.when(shared.create(Mockito.any(ClientCredentials.class), Mockito.any(UserCredentials.class),
+				Mockito.any(URI.class), Mockito.any(HttpConfig.class))).thenReturn(mockHttpProvider());
+
+		builderFor(mockHttpProvider()).usingHttpProviderFactory(shared).manageToken("first").done().startAsync()
+				.stop();
+
+		Mockito.verify(shared, Mockito.never()).close();
+	}
+
+	/**
+	 * Keeps the default {@link HttpProvider#createTokenAsync(AccessTokenConfiguration)}
+	 * delegating to the stubbed blocking method.
+	 */
+	private static HttpProvider mockHttpProvider() {
+		return Mockito.mock(HttpProvider.class, Mockito.withSettings().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+	}
+
+	private AccessTokensBuilder builderFor(final HttpProvider httpProvider) {
+		final ClientCredentialsProvider clientCredentialsProvider = Mockito.mock(ClientCredentialsProvider.class);
+		Mockito.when(clientCredentialsProvider.get()).thenReturn(new SimpleClientCredentials("name", "id", "secret"));
+
+		final UserCredentialsProvider userCredentialsProvider = Mockito.mock(UserCredentialsProvider.class);
+		Mockito.when(userCredentialsProvider.get()).thenReturn(new NoopUserCredentials());
+
+		final HttpProviderFactory httpProviderFactory = Mockito.mock(HttpProviderFactory.class);
+		Mockito.when(httpProviderFactory.create(Mockito.any(ClientCredentials.class),
+				Mockito.any(UserCredentials.class), Mockito.any(URI.class), Mockito.any(HttpConfig.class)))
+				.thenReturn(httpProvider);
+
+		return Tokens.createAccessTokensWithUri(uri).usingClientCredentialsProvider(clientCredentialsProvider)
+				.usingUserCredentialsProvider(userCredentialsProvider).usingHttpProviderFactory(httpProviderFactory);
+	}
 }
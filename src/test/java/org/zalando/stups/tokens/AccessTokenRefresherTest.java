@@ -21,6 +21,8 @@ import org.junit.Test;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 public class AccessTokenRefresherTest {
 
@@ -68,4 +70,34 @@ public class AccessTokenRefresherTest {
         Assert.assertFalse("50%", AccessTokenRefresher.shouldWarn(token(50, 100), config(50, 20)));
         Assert.assertTrue("10%", AccessTokenRefresher.shouldWarn(token(10, 100), config(50, 20)));
     }
+
+    @Test
+    public void testRefreshDeadline() {
+        AccessTokenRefresher refresher = new AccessTokenRefresher(config(40, 20));
+        long validUntil = System.currentTimeMillis() + 100000;
+        AccessToken token = new AccessToken("foo", "bar", 100, new Date(validUntil));
+
+        Assert.assertEquals(validUntil - 40000, refresher.refreshDeadline(token));
+        Assert.assertEquals(Long.MAX_VALUE, refresher.refreshDeadline(new AccessToken("foo", "bar", -1, null)));
+    }
+
+    @Test
+    public void testRefreshJitter() {
+        AccessTokensBuilder config = config(40, 20).refreshJitterPercent(20);
+        AccessTokenRefresher refresher = new AccessTokenRefresher(config);
+        long validUntil = System.currentTimeMillis() + 100000;
+
+        Set<Integer> percentages = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            AccessToken token = new AccessToken("token-" + i, "bar", 100, new Date(validUntil));
+            int percentLeft = AccessTokenRefresher.refreshPercentLeft(token, config);
+            Assert.assertTrue(percentLeft + "%", percentLeft >= 40 && percentLeft <= 60);
+            Assert.assertEquals("stable", percentLeft, AccessTokenRefresher.refreshPercentLeft(token, config));
+            Assert.assertEquals(validUntil - percentLeft * 1000, refresher.refreshDeadline(token));
+            percentages.add(percentLeft);
+        }
+        Assert.assertEquals("whole window is used", 21, percentages.size());
+
+        Assert.assertEquals(40, AccessTokenRefresher.refreshPercentLeft(token(50, 100), config(40, 20)));
+    }
 }
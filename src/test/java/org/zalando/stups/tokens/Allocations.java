@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.lang.management.ManagementFactory;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Assume;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the heap allocations of the current thread, for tests of paths
+ * that are expected to be allocation-free.
+ */
+public final class Allocations {
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the task once to warm up, e.g. class loading and interpreter
+     * profiling allocate, and asserts that a second run allocates less than
+     * the given number of bytes. Skips the test if the JVM cannot measure
+     * allocations per thread.
+     */
+    public static void assertAllocatesLessThan(final Runnable task, final long bytes) {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof ThreadMXBean);
+        final ThreadMXBean allocations = (ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        task.run();
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        task.run();
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        Assertions.assertThat(allocated).isLessThan(bytes);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.assertj.core.api.Assertions;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ClosableHttpProviderFactoryTest {
+
+    private static final byte[] TOKEN_RESPONSE = "{\"access_token\":\"123456789\",\"token_type\":\"Bearer\",\"expires_in\":3600}"
+            .getBytes(UTF_8);
+
+    private final List<InetSocketAddress> clients = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private URI accessTokenUri;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oauth2/access_token", exchange -> {
+            clients.add(exchange.getRemoteAddress());
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, TOKEN_RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(TOKEN_RESPONSE);
+            }
+        });
+        server.start();
+        accessTokenUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/oauth2/access_token");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void reusesConnectionsAcrossProviders() throws IOException {
+        final AccessTokenConfiguration tokenConfig = new AccessTokenConfiguration("test",
+                Mockito.mock(AccessTokensBuilder.class), "client_credentials");
+
+        try (ClosableHttpProviderFactory factory = new ClosableHttpProviderFactory()) {
+            for (String secret : new String[] { "first", "second", "third" }) {
+                try (HttpProvider provider = factory.create(new SimpleClientCredentials("name", "id", secret),
+                        new NoopUserCredentials(), accessTokenUri, new HttpConfig())) {
+                    Assertions.assertThat(provider.createToken(tokenConfig).getToken()).isEqualTo("123456789");
+                }
+            }
+        }
+
+        Assertions.assertThat(clients).hasSize(3);
+        final Set<InetSocketAddress> connections = new HashSet<>(clients);
+        Assertions.assertThat(connections).hasSize(1);
+
+        // credentials are still taken from each provider
+        Assertions.assertThat(new HashSet<>(authorizations)).hasSize(3).doesNotContain((String) null);
+    }
+
+    @Test
+    public void sharesClientsByPoolSettings() throws IOException {
+        try (ClosableHttpProviderFactory factory = new ClosableHttpProviderFactory()) {
+            final HttpConfig defaults = new HttpConfig();
+            final HttpConfig otherTimeouts = new HttpConfig();
+            otherTimeouts.setSocketTimeout(10000);
+            final HttpConfig largerPool = new HttpConfig();
+            largerPool.setMaxConnections(50);
+
+            final CloseableHttpClient client = factory.getClient(defaults);
+            Assertions.assertThat(factory.getClient(otherTimeouts)).isSameAs(client);
+            Assertions.assertThat(factory.getClient(largerPool)).isNotSameAs(client);
+        }
+    }
+
+    @Test
+    public void closeReleasesSharedClient() throws IOException {
+        final ClosableHttpProviderFactory factory = new ClosableHttpProviderFactory();
+        final HttpConfig httpConfig = new HttpConfig();
+        final CloseableHttpClient client = factory.getClient(httpConfig);
+        Assertions.assertThat(factory.getClient(httpConfig)).isSameAs(client);
+
+        factory.close();
+
+        Assertions.assertThat(factory.getClient(httpConfig)).isNotSameAs(client);
+        factory.close();
+    }
+}
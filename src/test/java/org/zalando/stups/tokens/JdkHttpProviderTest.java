@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class JdkHttpProviderTest {
+
+    private static final byte[] TOKEN_RESPONSE = "{\"access_token\":\"123456789\",\"token_type\":\"Bearer\",\"expires_in\":3600}"
+            .getBytes(UTF_8);
+
+    private static final long RESPONSE_DELAY_MILLIS = 300;
+
+    private HttpServer server;
+    private volatile String lastForm;
+    private URI baseUri;
+
+    private final AccessTokenConfiguration tokenConfig = new AccessTokenConfiguration("test",
+            Mockito.mock(AccessTokensBuilder.class), "client_credentials");
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/oauth2/access_token", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            sleep(RESPONSE_DELAY_MILLIS);
+            respond(exchange, 200, TOKEN_RESPONSE);
+        });
+        server.createContext("/oauth2/form", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                lastForm = new String(in.readAllBytes(), UTF_8);
+            }
+            respond(exchange, 200, TOKEN_RESPONSE);
+        });
+        server.createContext("/oauth2/unauthorized", exchange -> {
+            respond(exchange, 401, "{\"error\":\"invalid_client\"}".getBytes(UTF_8));
+        });
+        server.createContext("/oauth2/tokeninfo", exchange -> {
+            final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            respond(exchange, "Bearer valid".equals(authorization) ? 200 : 401, "{}".getBytes(UTF_8));
+        });
+        server.start();
+        baseUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/oauth2/");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void keepsManyRequestsInFlight() {
+        final HttpProvider provider = new JdkHttpProviderFactory().create(
+                new SimpleClientCredentials("name", "id", "secret"), new NoopUserCredentials(),
+                baseUri.resolve("access_token"), new HttpConfig());
+
+        final long start = System.nanoTime();
+        final List<CompletableFuture<AccessToken>> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tokens.add(provider.createTokenAsync(tokenConfig));
+        }
+        for (CompletableFuture<AccessToken> token : tokens) {
+            Assertions.assertThat(token.join().getToken()).isEqualTo("123456789");
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // sequential requests would take at least 8 times the delay
+        Assertions.assertThat(elapsed).isLessThan(4 * RESPONSE_DELAY_MILLIS);
+    }
+
+    @Test
+    public void sendsPasswordGrantWithoutUserCredentials() throws UnsupportedEncodingException {
+        final HttpProvider provider = new JdkHttpProviderFactory().create(
+                new SimpleClientCredentials("name", "id", "secret"), new NoopUserCredentials(),
+                baseUri.resolve("form"), new HttpConfig());
+
+        final AccessToken token = provider.createToken(
+                new AccessTokenConfiguration("test", Mockito.mock(AccessTokensBuilder.class), "password"));
+
+        Assertions.assertThat(token.getToken()).isEqualTo("123456789");
+        Assertions.assertThat(lastForm.split("&")).contains("grant_type=password", "username", "password");
+    }
+
+    @Test
+    public void failsOnErrorStatus() {
+        final HttpProvider provider = new JdkHttpProviderFactory().create(
+                new SimpleClientCredentials("name", "id", "secret"), new NoopUserCredentials(),
+                baseUri.resolve("unauthorized"), new HttpConfig());
+
+        Assertions.assertThatThrownBy(() -> provider.createTokenAsync(tokenConfig).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(AccessTokenEndpointException.class);
+        Assertions.assertThatThrownBy(() -> provider.createToken(tokenConfig))
+                .isInstanceOf(AccessTokenEndpointException.class).hasMessageContaining("401");
+    }
+
+    @Test
+    public void verifiesTokens() throws IOException {
+        try (TokenVerifier verifier = new JdkTokenVerifierProvider().create(baseUri.resolve("tokeninfo"),
+                new HttpConfig(), new DebugLogMetricsListener())) {
+            Assertions.assertThat(verifier.isTokenValidAsync("valid").join()).isTrue();
+            Assertions.assertThat(verifier.isTokenValid("revoked")).isFalse();
+        }
+    }
+
+    @Test
+    public void sharesOneHttp2ClientForTokensAndTokenInfo() {
+        final AccessTokensBuilder builder = Tokens.createAccessTokensWithUri(baseUri.resolve("access_token"))
+                .usingJdkHttpClient();
+        Assertions.assertThat(builder.getHttpProviderFactory()).isSameAs(builder.getTokenVerifierProvider())
+                .isInstanceOf(JdkHttpProviderFactory.class);
+
+        final JdkHttpProviderFactory factory = (JdkHttpProviderFactory) builder.getHttpProviderFactory();
+        final HttpClient client = factory.getClient(new HttpConfig());
+        Assertions.assertThat(client.version()).isEqualTo(HttpClient.Version.HTTP_2);
+        Assertions.assertThat(factory.getClient(new HttpConfig())).isSameAs(client);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonFileBackedClientCredentialsProviderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void readsFileOnlyWhenChanged() throws IOException {
+        final File file = tempFolder.newFile("client.json");
+        write(file, "{\"client_id\":\"id\",\"client_secret\":\"first\"}");
+        final JsonFileBackedClientCredentialsProvider provider = new JsonFileBackedClientCredentialsProvider(file);
+
+        final ClientCredentials first = provider.get();
+        Assertions.assertThat(first.getSecret()).isEqualTo("first");
+        Assertions.assertThat(provider.get()).isSameAs(first);
+
+        write(file, "{\"client_id\":\"id\",\"client_secret\":\"second\"}");
+        Assertions.assertThat(provider.get().getSecret()).isEqualTo("second");
+    }
+
+    @Test
+    public void failsWithoutFile() {
+        final JsonFileBackedClientCredentialsProvider provider = new JsonFileBackedClientCredentialsProvider(
+                new File(tempFolder.getRoot(), "missing.json"));
+
+        Assertions.assertThatThrownBy(provider::get).isInstanceOf(CredentialsUnavailableException.class);
+    }
+
+    private static void write(final File file, final String json) throws IOException {
+        final FileTime previous = Files.getLastModifiedTime(file.toPath());
+        Files.write(file.toPath(), json.getBytes(UTF_8));
+        // do not depend on the resolution of the filesystem clock
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(previous.toMillis() + 1000));
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class JwtTokenVerifierTest {
+
+    private static final String ISSUER = "https://identity.example.org";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private KeyPair rsaKeys;
+    private KeyPair ecKeys;
+    private File jwksFile;
+
+    @Before
+    public void createKeys() throws GeneralSecurityException, IOException {
+        final KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+        rsa.initialize(2048);
+        rsaKeys = rsa.generateKeyPair();
+
+        final KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+        ec.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKeys = ec.generateKeyPair();
+
+        jwksFile = tempFolder.newFile("jwks.json");
+        Files.write(jwksFile.toPath(), jwks(rsaJwk("rsa-1", rsaKeys), ecJwk("ec-1", ecKeys)).getBytes(UTF_8));
+    }
+
+    @Test
+    public void acceptsValidTokens() throws Exception {
+        final TokenVerifier verifier = verifier(new JwtTokenVerifierProvider(jwksFile).withIssuer(ISSUER));
+
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", rsaKeys, claims(3600, ISSUER)))).isTrue();
+        Assertions.assertThat(verifier.isTokenValid(es256("ec-1", ecKeys, claims(3600, ISSUER)))).isTrue();
+    }
+
+    @Test
+    public void rejectsInvalidTokens() throws Exception {
+        final TokenVerifier verifier = verifier(
+                new JwtTokenVerifierProvider(jwksFile).withIssuer(ISSUER).withClockSkew(0, TimeUnit.SECONDS));
+
+        // expired
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", rsaKeys, claims(-10, ISSUER)))).isFalse();
+        // not valid yet
+        Assertions.assertThat(verifier.isTokenValid(
+                rs256("rsa-1", rsaKeys, "{\"iss\":\"" + ISSUER + "\",\"nbf\":" + (epochSeconds() + 600) + "}")))
+                .isFalse();
+        // other issuer
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", rsaKeys, claims(3600, "https://other")))).isFalse();
+        // tampered payload
+        final String token = rs256("rsa-1", rsaKeys, claims(3600, ISSUER));
+        final String[] parts = token.split("\\.");
+        final String tampered = parts[0] + "." + base64(claims(7200, ISSUER)) + "." + parts[2];
+        Assertions.assertThat(verifier.isTokenValid(tampered)).isFalse();
+        // signed by another key with a known key id
+        final KeyPair otherKeys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", otherKeys, claims(3600, ISSUER)))).isFalse();
+        // unsigned
+        Assertions.assertThat(verifier.isTokenValid(base64("{\"alg\":\"none\"}") + "." + base64(claims(3600, ISSUER))
+                + ".")).isFalse();
+    }
+
+    @Test
+    public void keepsOpaqueTokens() {
+        final TokenVerifier verifier = verifier(new JwtTokenVerifierProvider(jwksFile));
+
+        Assertions.assertThat(verifier.isTokenValid("0123456789abcdef")).isTrue();
+    }
+
+    @Test
+    public void keepsTokensItCannotVerify() throws Exception {
+        final TokenVerifier verifier = verifier(new JwtTokenVerifierProvider(jwksFile).withIssuer(ISSUER));
+
+        // unknown key id
+        final KeyPair otherKeys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-2", otherKeys, claims(3600, ISSUER)))).isTrue();
+        // unsupported algorithms
+        Assertions.assertThat(verifier.isTokenValid(sign("PS256", "SHA256withRSA", "rsa-1", rsaKeys,
+                claims(3600, ISSUER)))).isTrue();
+        Assertions.assertThat(verifier.isTokenValid(base64("{\"alg\":\"HS256\"}") + "."
+                + base64(claims(3600, ISSUER)) + ".c2lnbmF0dXJl")).isTrue();
+    }
+
+    @Test
+    public void keepsTokensWithoutKeySet() throws Exception {
+        final TokenVerifier verifier = verifier(
+                new JwtTokenVerifierProvider(new File(tempFolder.getRoot(), "missing.json")));
+
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", rsaKeys, claims(3600, ISSUER)))).isTrue();
+    }
+
+    @Test
+    public void reloadsKeySetForUnknownKeyId() throws Exception {
+        final TokenVerifier verifier = new JwtTokenVerifier(jwksFile.toURI(), null, 0, TimeUnit.HOURS.toMillis(1),
+                0, new HttpConfig(), new DebugLogMetricsListener());
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-1", rsaKeys, claims(3600, ISSUER)))).isTrue();
+
+        final KeyPair rotated = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Files.write(jwksFile.toPath(), jwks(rsaJwk("rsa-1", rsaKeys), rsaJwk("rsa-2", rotated)).getBytes(UTF_8));
+
+        Assertions.assertThat(verifier.isTokenValid(rs256("rsa-2", rotated, claims(3600, ISSUER)))).isTrue();
+    }
+
+    @Test
+    public void loadsKeySetFromUri() throws Exception {
+        final byte[] jwks = Files.readAllBytes(jwksFile.toPath());
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oauth2/connect/keys", exchange -> {
+            exchange.sendResponseHeaders(200, jwks.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jwks);
+            }
+        });
+        server.start();
+        try {
+            final URI jwksUri = URI.create("http://localhost:" + server.getAddress().getPort() + "/oauth2/connect/keys");
+            final TokenVerifier verifier = verifier(new JwtTokenVerifierProvider(jwksUri));
+
+            Assertions.assertThat(verifier.isTokenValid(es256("ec-1", ecKeys, claims(3600, ISSUER)))).isTrue();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void doesNotRequireTokenInfoUri() {
+        Assertions.assertThat(new JwtTokenVerifierProvider(jwksFile).requiresTokenInfoUri()).isFalse();
+        Assertions.assertThat(new CloseableTokenVerifierProvider().requiresTokenInfoUri()).isTrue();
+    }
+
+    private static TokenVerifier verifier(final JwtTokenVerifierProvider provider) {
+        return provider.create(null, new HttpConfig(), new DebugLogMetricsListener());
+    }
+
+    private static String claims(final long expiresInSeconds, final String issuer) {
+        return "{\"iss\":\"" + issuer + "\",\"sub\":\"stups_test\",\"exp\":" + (epochSeconds() + expiresInSeconds)
+                + "}";
+    }
+
+    private static long epochSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    private static String rs256(final String keyId, final KeyPair keys, final String claims)
+            throws GeneralSecurityException {
+        return sign("RS256", "SHA256withRSA", keyId, keys, claims);
+    }
+
+    private static String es256(final String keyId, final KeyPair keys, final String claims)
+            throws GeneralSecurityException {
+        return sign("ES256", "SHA256withECDSAinP1363Format", keyId, keys, claims);
+    }
+
+    private static String sign(final String alg, final String algorithm, final String keyId, final KeyPair keys,
+            final String claims) throws GeneralSecurityException {
+        final String signingInput = base64("{\"alg\":\"" + alg + "\",\"kid\":\"" + keyId + "\"}") + "."
+                + base64(claims);
+        final Signature signature = Signature.getInstance(algorithm);
+        signature.initSign(keys.getPrivate());
+        signature.update(signingInput.getBytes(UTF_8));
+        return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+    }
+
+    private static String jwks(final String... keys) {
+        return "{\"keys\":[" + String.join(",", keys) + "]}";
+    }
+
+    private static String rsaJwk(final String keyId, final KeyPair keys) {
+        final RSAPublicKey key = (RSAPublicKey) keys.getPublic();
+        return "{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"" + keyId + "\",\"n\":\"" + base64(key.getModulus())
+                + "\",\"e\":\"" + base64(key.getPublicExponent()) + "\"}";
+    }
+
+    private static String ecJwk(final String keyId, final KeyPair keys) {
+        final ECPublicKey key = (ECPublicKey) keys.getPublic();
+        return "{\"kty\":\"EC\",\"crv\":\"P-256\",\"kid\":\"" + keyId + "\",\"x\":\"" + base64(key.getW().getAffineX())
+                + "\",\"y\":\"" + base64(key.getW().getAffineY()) + "\"}";
+    }
+
+    private static String base64(final String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(UTF_8));
+    }
+
+    private static String base64(final BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class RefreshScheduleTest {
+
+    @Test
+    public void emptySchedule() {
+        RefreshSchedule schedule = new RefreshSchedule();
+        Assertions.assertThat(schedule.nextDeadline()).isEqualTo(Long.MAX_VALUE);
+        Assertions.assertThat(schedule.pollDue(1000, 2000)).isEmpty();
+    }
+
+    @Test
+    public void pollsDueTokensInDeadlineOrder() {
+        RefreshSchedule schedule = new RefreshSchedule();
+        schedule.schedule("late", 300);
+        schedule.schedule("early", 100);
+        schedule.schedule("middle", 200);
+
+        Assertions.assertThat(schedule.nextDeadline()).isEqualTo(100);
+        Assertions.assertThat(schedule.pollDue(200, 1000)).containsExactly("early", "middle");
+        Assertions.assertThat(schedule.nextDeadline()).isEqualTo(300);
+    }
+
+    @Test
+    public void polledTokensAreRetriedUnlessRescheduled() {
+        RefreshSchedule schedule = new RefreshSchedule();
+        schedule.schedule("failing", 100);
+        schedule.schedule("refreshed", 100);
+
+        Assertions.assertThat(schedule.pollDue(100, 5000)).containsExactly("failing", "refreshed");
+        schedule.schedule("refreshed", 9000);
+
+        Assertions.assertThat(schedule.deadlineOf("failing")).isEqualTo(5000);
+        Assertions.assertThat(schedule.deadlineOf("refreshed")).isEqualTo(9000);
+        Assertions.assertThat(schedule.nextDeadline()).isEqualTo(5000);
+    }
+
+    @Test
+    public void rescheduleMovesDeadline() {
+        RefreshSchedule schedule = new RefreshSchedule();
+        schedule.schedule("token", 5000);
+        schedule.schedule("token", 0);
+
+        Assertions.assertThat(schedule.nextDeadline()).isEqualTo(0);
+        Assertions.assertThat(schedule.pollDue(10, 5000)).containsExactly("token");
+        Assertions.assertThat(schedule.pollDue(10, 5000)).isEmpty();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TokenSnapshotTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[16], "AES");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(tempFolder.getRoot(), "tokens.snapshot");
+    }
+
+    @Test
+    public void keepsValidTokensOnly() {
+        final long now = System.currentTimeMillis();
+        final Map<Object, AccessToken> tokens = new HashMap<>();
+        tokens.put("valid", new AccessToken("secret", "Bearer", 3600, new Date(now + 3600000), now - 60000));
+        tokens.put("expired", new AccessToken("old", "Bearer", 3600, new Date(now - 1000)));
+
+        new TokenSnapshot(file, KEY).store(tokens);
+        final Map<String, AccessToken> loaded = new TokenSnapshot(file, KEY).load();
+
+        Assertions.assertThat(loaded).containsOnlyKeys("valid");
+        final AccessToken token = loaded.get("valid");
+        Assertions.assertThat(token.getToken()).isEqualTo("secret");
+        Assertions.assertThat(token.getType()).isEqualTo("Bearer");
+        Assertions.assertThat(token.getInitialValidSeconds()).isEqualTo(3600);
+        Assertions.assertThat(token.getValidUntilMillis()).isEqualTo(now + 3600000);
+        Assertions.assertThat(token.getCreationTimestamp()).isEqualTo(now - 60000);
+    }
+
+    @Test
+    public void doesNotStorePlaintext() throws Exception {
+        new TokenSnapshot(file, KEY).store(Collections.singletonMap("tokenId",
+                new AccessToken("plaintext-token", "Bearer", 3600, new Date(System.currentTimeMillis() + 3600000))));
+
+        Assertions.assertThat(new String(Files.readAllBytes(file.toPath()), "ISO-8859-1"))
+                .doesNotContain("plaintext-token").doesNotContain("tokenId");
+        Assertions.assertThat(tempFolder.getRoot().list()).containsExactly("tokens.snapshot");
+    }
+
+    @Test
+    public void ignoresSnapshotOfOtherKey() {
+        storeOne();
+
+        final SecretKey other = new SecretKeySpec(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 },
+                "AES");
+        Assertions.assertThat(new TokenSnapshot(file, other).load()).isEmpty();
+    }
+
+    @Test
+    public void ignoresTamperedSnapshot() throws Exception {
+        storeOne();
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        Assertions.assertThat(new TokenSnapshot(file, KEY).load()).isEmpty();
+    }
+
+    @Test
+    public void ignoresMissingSnapshot() {
+        Assertions.assertThat(new TokenSnapshot(file, KEY).load()).isEmpty();
+    }
+
+    private void storeOne() {
+        new TokenSnapshot(file, KEY).store(Collections.singletonMap("tokenId",
+                new AccessToken("token", "Bearer", 3600, new Date(System.currentTimeMillis() + 3600000))));
+        Assertions.assertThat(new TokenSnapshot(file, KEY).load()).containsOnlyKeys("tokenId");
+    }
+
+}
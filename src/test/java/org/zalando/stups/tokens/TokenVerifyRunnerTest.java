@@ -66,7 +66,8 @@ public class TokenVerifyRunnerTest {
 
     @Test
     public void create() {
-        TokenVerifier verifier = Mockito.mock(TokenVerifier.class);
+        TokenVerifier verifier = Mockito.mock(TokenVerifier.class,
+                Mockito.withSettings().defaultAnswer(Mockito.CALLS_REAL_METHODS));
         Mockito.when(configuration.getTokenInfoUri()).thenReturn(tokenInfoUri);
         Mockito.when(configuration.getTokenVerifierMcbConfig()).thenReturn(new MCBConfig.Builder().build());
         Mockito.when(tokenVerifierProvider.create(Mockito.any(URI.class), Mockito.any(),
@@ -89,6 +90,19 @@ public class TokenVerifyRunnerTest {
         Assertions.assertThat(invalidTokens.size()).isEqualTo(1);
     }
 
+    @Test
+    public void createsVerifierWithoutTokenInfoUriOnlyIfNotRequired() throws IOException {
+        Mockito.when(configuration.getTokenVerifierMcbConfig()).thenReturn(new MCBConfig.Builder().build());
+
+        Mockito.when(tokenVerifierProvider.requiresTokenInfoUri()).thenReturn(true);
+        new TokenVerifyRunner(configuration, accessTokens, invalidTokens).close();
+        Mockito.verify(tokenVerifierProvider, Mockito.never()).create(Mockito.any(), Mockito.any(), Mockito.any());
+
+        Mockito.when(tokenVerifierProvider.requiresTokenInfoUri()).thenReturn(false);
+        new TokenVerifyRunner(configuration, accessTokens, invalidTokens).close();
+        Mockito.verify(tokenVerifierProvider).create(Mockito.isNull(), Mockito.any(), Mockito.any());
+    }
+
     @Test
     public void olderThanMinute() throws IOException {
         try (TokenVerifyRunner runner = new TokenVerifyRunner(configuration, accessTokens, invalidTokens)) {
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zalando.stups.tokens.AccessToken;
+import org.zalando.stups.tokens.ClientCredentials;
+import org.zalando.stups.tokens.MetricsListener;
+import org.zalando.stups.tokens.Secret;
+
+public class CredentialsDirectoryScannerTest {
+
+    private final Map<Object, AccessToken> accessTokens = new HashMap<>();
+    private final Map<String, Secret> secrets = new HashMap<>();
+    private final Map<String, ClientCredentials> clientCredentials = new HashMap<>();
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Map<String, Long> counters = new HashMap<>();
+
+    private final MetricsListener metrics = new MetricsListener() {
+        @Override
+        public void submitToTimer(String key, long time) {
+        }
+
+        @Override
+        public void submitToCounter(String key, long delta) {
+            counters.merge(key, delta, Long::sum);
+        }
+    };
+
+    @Test
+    public void readsAllCredentialsInOnePass() {
+        final AtomicInteger extracted = new AtomicInteger();
+        final TokenContentExtractor extractor = (token, type) -> {
+            extracted.incrementAndGet();
+            return new DefaultFileSystemTokenContentExtractor().extract(token, type);
+        };
+
+        new CredentialsDirectoryScanner(
+                Arrays.asList(new AccessTokenHandler(accessTokens, extractor), new SecretsHandler(secrets)),
+                new ClientCredentialsHandler(clientCredentials), metrics).scan(new File("fs"));
+
+        Assertions.assertThat(accessTokens).containsOnlyKeys("myfirst");
+        Assertions.assertThat(secrets).containsOnlyKeys("myfirst", "mybasic");
+        Assertions.assertThat(secrets.get("mybasic").getType()).isEqualTo("Basic");
+        Assertions.assertThat(clientCredentials).containsOnlyKeys("kio");
+
+        // only the bearer token gets decoded, the basic one is skipped by type
+        Assertions.assertThat(extracted).hasValue(1);
+    }
+
+    @Test
+    public void skipsUnchangedFiles() throws IOException {
+        final File dir = tempFolder.getRoot();
+        for (File file : new File("fs").listFiles()) {
+            Files.copy(file.toPath(), dir.toPath().resolve(file.getName()));
+        }
+        final AtomicInteger extracted = new AtomicInteger();
+        final TokenContentExtractor extractor = (token, type) -> {
+            extracted.incrementAndGet();
+            return new DefaultFileSystemTokenContentExtractor().extract(token, type);
+        };
+        final CredentialsDirectoryScanner scanner = new CredentialsDirectoryScanner(
+                Arrays.asList(new AccessTokenHandler(accessTokens, extractor), new SecretsHandler(secrets)),
+                new ClientCredentialsHandler(clientCredentials), metrics);
+
+        scanner.scan(dir);
+        final AccessToken first = accessTokens.get("myfirst");
+        Assertions.assertThat(counters).containsEntry(CredentialsDirectoryScanner.FILES_READ_METRICS_KEY, 3L)
+                .containsEntry(CredentialsDirectoryScanner.FILES_SKIPPED_METRICS_KEY, 0L);
+
+        scanner.scan(dir);
+        Assertions.assertThat(accessTokens.get("myfirst")).isSameAs(first);
+        Assertions.assertThat(extracted).hasValue(1);
+        Assertions.assertThat(counters).containsEntry(CredentialsDirectoryScanner.FILES_READ_METRICS_KEY, 3L)
+                .containsEntry(CredentialsDirectoryScanner.FILES_SKIPPED_METRICS_KEY, 3L);
+
+        // a changed type file makes its token be read again
+        Files.write(dir.toPath().resolve("myfirst-token-type"), "Bearer\n".getBytes(StandardCharsets.UTF_8));
+        scanner.scan(dir);
+        Assertions.assertThat(accessTokens.get("myfirst")).isNotSameAs(first);
+        Assertions.assertThat(extracted).hasValue(2);
+        Assertions.assertThat(counters).containsEntry(CredentialsDirectoryScanner.FILES_READ_METRICS_KEY, 4L)
+                .containsEntry(CredentialsDirectoryScanner.FILES_SKIPPED_METRICS_KEY, 5L);
+    }
+}
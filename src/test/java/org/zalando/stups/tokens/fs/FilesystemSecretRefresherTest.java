@@ -15,19 +15,35 @@
  */
 package org.zalando.stups.tokens.fs;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.assertj.core.api.Assertions;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.zalando.stups.tokens.AccessToken;
 import org.zalando.stups.tokens.AccessTokens;
+import org.zalando.stups.tokens.AccessTokensBuilder;
+import org.zalando.stups.tokens.AsyncAccessTokens;
 import org.zalando.stups.tokens.Secrets;
 import org.zalando.stups.tokens.Tokens;
 
 public class FilesystemSecretRefresherTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Before
     public void setup() {
         System.getProperties().put("CREDENTIALS_DIR", "fs");
@@ -93,4 +109,90 @@ public class FilesystemSecretRefresherTest {
         at.stop();
     }
     //@formatter:on
+
+    @Test
+    public void toleratesMissingMetricsListener() {
+        final AccessTokensBuilder builder = Mockito.spy(Tokens.createAccessTokensWithUri(
+                URI.create("http://we.use.filesystemsecrets.and.do.not.care.about.this")).manageToken("myfirst").done()
+                .whenUsingFilesystemSecrets().validateTokensOnStartup().done());
+        Mockito.doReturn(null).when(builder).getMetricsListener();
+
+        final FilesystemSecretRefresher refresher = new FilesystemSecretRefresher(builder);
+        try {
+            refresher.start();
+            Assertions.assertThat(refresher.getClient("kio")).isNotNull();
+        } finally {
+            refresher.stop();
+        }
+    }
+
+    //@formatter:off
+    @Test
+    public void testWatchForChanges() throws Exception {
+        final Path dir = tempFolder.getRoot().toPath();
+        System.getProperties().put("CREDENTIALS_DIR", dir.toString());
+        write(dir, "plain-token-secret", "first");
+        write(dir, "plain-token-type", "Bearer");
+
+        // Kubernetes layout: files are links into '..data', which is swapped on updates
+        final Path version1 = Files.createDirectory(dir.resolve("..v1"));
+        write(version1, "mounted-token-secret", "first");
+        write(version1, "mounted-token-type", "Bearer");
+        Files.createSymbolicLink(dir.resolve("..data"), dir.relativize(version1));
+        Files.createSymbolicLink(dir.resolve("mounted-token-secret"), Paths.get("..data", "mounted-token-secret"));
+        Files.createSymbolicLink(dir.resolve("mounted-token-type"), Paths.get("..data", "mounted-token-type"));
+
+        AccessTokens at = Tokens.createAccessTokensWithUri(URI.create("http://we.use.filesystemsecrets.and.do.not.care.about.this"))
+            .manageToken("plain")
+                .addScope("read::all")
+                .done()
+            .whenUsingFilesystemSecrets()
+                .watchForChanges()
+                .usingTokenContentExtractor(new DefaultFileSystemTokenContentExtractor())
+                .done()
+            .schedulingPeriod(1)
+            .schedulingTimeUnit(TimeUnit.HOURS)
+            .start();
+        try {
+            Assertions.assertThat(at.get("plain")).isEqualTo("first");
+            Assertions.assertThat(at.get("mounted")).isEqualTo("first");
+
+            write(dir, "plain-token-secret", "second");
+            awaitToken(at, "plain", "second");
+
+            final Path version2 = Files.createDirectory(dir.resolve("..v2"));
+            write(version2, "mounted-token-secret", "second");
+            write(version2, "mounted-token-type", "Bearer");
+            final Path tmp = Files.createSymbolicLink(dir.resolve("..data_tmp"), dir.relativize(version2));
+            Files.move(tmp, dir.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+            awaitToken(at, "mounted", "second");
+
+            // readiness of a token that only appears after the start
+            final CompletableFuture<AccessToken> late = ((AsyncAccessTokens) at).whenReady("late");
+            Assertions.assertThat(late).isNotDone();
+            // moved in place, so the watcher cannot read a partially written secret
+            final Path staging = Files.createDirectory(dir.resolve("staging"));
+            write(dir, "late-token-type", "Bearer");
+            write(staging, "late-token-secret", "third");
+            Files.move(staging.resolve("late-token-secret"), dir.resolve("late-token-secret"),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Assertions.assertThat(late.get(10, TimeUnit.SECONDS).getToken()).isEqualTo("third");
+        } finally {
+            at.stop();
+        }
+    }
+    //@formatter:on
+
+    private static void write(final Path dir, final String fileName, final String content) throws IOException {
+        Files.write(dir.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void awaitToken(final AccessTokens at, final String tokenId, final String expected)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!expected.equals(at.get(tokenId)) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        Assertions.assertThat(at.get(tokenId)).isEqualTo(expected);
+    }
 }
@@ -17,7 +17,11 @@ package org.zalando.stups.tokens.fs;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Random;
 import java.util.UUID;
 
 import org.junit.Test;
@@ -47,4 +51,63 @@ public class JwtFileSystemTokenContentExtractorTest {
         assertThat(at.getInitialValidSeconds()).isLessThan(0);
     }
 
+    @Test
+    public void extractContentUrlSafeWithoutPadding() {
+        final long exp = System.currentTimeMillis() / 1000 + 3600;
+        // '?>' and '~~' force '-' and '_' into the url-safe encoding
+        final String payload = "{\"sub\":\"?>~~\",\"nested\":{\"exp\":1},\"exp\":" + exp + ",\"iat\":1}";
+        final String encoded = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        assertThat(encoded).containsAnyOf("-", "_");
+
+        AccessToken at = new JwtFileSystemTokenContentExtractor().extract("header." + encoded + ".signature", "Bearer");
+        assertThat(at.getValidUntil()).isEqualTo(new Date(exp * 1000));
+        assertThat(at.getInitialValidSeconds()).isBetween(3590L, 3600L);
+    }
+
+    @Test
+    public void extractCreationTimestamp() {
+        final long now = System.currentTimeMillis() / 1000;
+        assertThat(extractPayload("{\"exp\":" + (now + 3600) + ",\"nbf\":" + (now - 20) + ",\"iat\":" + (now - 10)
+                + "}").getCreationTimestamp()).isEqualTo((now - 10) * 1000);
+        assertThat(extractPayload("{\"nbf\":" + (now - 20) + ",\"exp\":" + (now + 3600) + "}")
+                .getCreationTimestamp()).isEqualTo((now - 20) * 1000);
+
+        // never in the future, and now without iat and nbf
+        final long before = System.currentTimeMillis();
+        assertThat(extractPayload("{\"exp\":" + (now + 3600) + ",\"iat\":" + (now + 60) + "}")
+                .getCreationTimestamp()).isBetween(before, System.currentTimeMillis());
+        assertThat(extractPayload("{\"exp\":" + (now + 3600) + ",\"iat\":\"soon\"}").getCreationTimestamp())
+                .isBetween(before, System.currentTimeMillis());
+    }
+
+    @Test
+    public void extractContentWithoutExpiration() {
+        final String encoded = Base64.getEncoder().encodeToString("{\"sub\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        AccessToken at = new JwtFileSystemTokenContentExtractor().extract("header." + encoded + ".signature", "Bearer");
+        assertThat(at.getValidUntil()).isNull();
+    }
+
+    @Test
+    public void decodesBothBase64Alphabets() {
+        final Random random = new Random(42);
+        final byte[] target = new byte[64];
+        for (int length = 0; length < 48; length++) {
+            final byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            for (String encoded : new String[] { Base64.getEncoder().encodeToString(bytes),
+                    Base64.getUrlEncoder().withoutPadding().encodeToString(bytes) }) {
+                final int decoded = JwtFileSystemTokenContentExtractor.decodeBase64(encoded, 0, encoded.length(),
+                        target);
+                assertThat(Arrays.copyOf(target, decoded)).isEqualTo(bytes);
+            }
+        }
+    }
+
+    private static AccessToken extractPayload(String payload) {
+        final String encoded = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return new JwtFileSystemTokenContentExtractor().extract("header." + encoded + ".signature", "Bearer");
+    }
+
 }
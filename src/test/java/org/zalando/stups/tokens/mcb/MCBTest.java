@@ -0,0 +1,449 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.mcb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.zalando.stups.tokens.Allocations;
+import org.zalando.stups.tokens.mcb.MCBConfig.SlidingWindowType;
+
+public class MCBTest {
+
+    private static final int THREADS = 8;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final MCB mcb = new MCB(new MCBConfig.Builder().withErrorThreshold(3).withTimeout(10).withMaxMulti(3)
+            .withTimeUnit(TimeUnit.SECONDS).build(), clock::get);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void opensAfterConsecutiveErrors() {
+        mcb.onError();
+        mcb.onError();
+        mcb.onSuccess();
+        mcb.onError();
+        mcb.onError();
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+
+        mcb.onError();
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.OPEN);
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+    }
+
+    @Test
+    public void backsOffUntilMaxMulti() {
+        open();
+
+        // multi 1: 10 seconds
+        advance(9_999);
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+        advance(1);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.HALF_OPEN);
+
+        // failed probe, multi 2: 20 seconds
+        mcb.onError();
+        advance(19_999);
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+        advance(1);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+
+        // multi 3 is the max
+        mcb.onError();
+        advance(30_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        mcb.onError();
+        advance(29_999);
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+        advance(1);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+
+        mcb.onSuccess();
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.CLOSED);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+    }
+
+    @Test
+    public void reportsTransitionsOnce() {
+        final List<MCBState> transitions = new ArrayList<>();
+        final MCB mcb = new MCB(new MCBConfig.Builder().withErrorThreshold(1).withTimeout(10)
+                .withTimeUnit(TimeUnit.SECONDS).build(), clock::get, transitions::add);
+
+        mcb.onError();
+        mcb.onError();
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+        advance(10_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        mcb.onError();
+        advance(20_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        mcb.onSuccess();
+        mcb.onSuccess();
+
+        Assertions.assertThat(transitions).containsExactly(MCBState.OPEN, MCBState.HALF_OPEN, MCBState.OPEN,
+                MCBState.HALF_OPEN, MCBState.CLOSED);
+    }
+
+    @Test
+    public void replacesProbeThatDoesNotReportBack() {
+        open();
+        advance(10_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+
+        advance(10_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+    }
+
+    @Test
+    public void letsNextCallerProbeAfterRelease() {
+        open();
+        advance(10_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+
+        mcb.release();
+        Assertions.assertThat(mcb.getState()).isEqualTo(MCBState.HALF_OPEN);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+    }
+
+    @Test
+    public void ignoresReleaseUnlessHalfOpen() {
+        mcb.release();
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+
+        open();
+        mcb.release();
+        Assertions.assertThat(mcb.getState()).isEqualTo(MCBState.OPEN);
+        Assertions.assertThat(mcb.isClosed()).isFalse();
+    }
+
+    @Test
+    public void letsExactlyOneProbeThroughUnderContention() throws Exception {
+        for (int round = 0; round < 100; round++) {
+            open();
+            advance(10_000);
+
+            final AtomicInteger probes = new AtomicInteger();
+            runConcurrently(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (mcb.isClosed()) {
+                        probes.incrementAndGet();
+                    }
+                }
+            });
+
+            Assertions.assertThat(probes).hasValue(1);
+            mcb.onSuccess();
+            Assertions.assertThat(mcb.state()).isEqualTo(MCB.CLOSED);
+        }
+    }
+
+    @Test
+    public void opensOnceUnderConcurrentErrors() throws Exception {
+        runConcurrently(() -> {
+            for (int i = 0; i < 1_000; i++) {
+                mcb.onError();
+            }
+        });
+
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.OPEN);
+        // opened with the first multiplier, not re-opened by the errors that raced in
+        advance(10_000);
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+    }
+
+    @Test
+    public void survivesMixedContention() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                if (mcb.isClosed()) {
+                    if (calls.incrementAndGet() % 4 == 0) {
+                        mcb.onSuccess();
+                    } else {
+                        mcb.onError();
+                    }
+                }
+                if (i % 100 == 0) {
+                    advance(1_000);
+                }
+            }
+        });
+
+        Assertions.assertThat(mcb.state()).isBetween(MCB.CLOSED, MCB.HALF_OPEN);
+        mcb.onSuccess();
+        advance(60_000);
+        // whatever state it ended in, it recovers after a successful probe
+        Assertions.assertThat(mcb.isClosed()).isTrue();
+        mcb.onSuccess();
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.CLOSED);
+    }
+
+    @Test
+    public void opensOnFailureRateOfCountBasedWindow() {
+        final MCB breaker = new MCB(new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.COUNT_BASED, 10)
+                .withMinimumNumberOfCalls(10).withFailureRateThreshold(50).build(), clock::get);
+
+        // alternating outcomes never make consecutive errors, but half of the calls fail
+        for (int i = 0; i < 9; i++) {
+            if (i % 2 == 0) {
+                breaker.onSuccess();
+            } else {
+                breaker.onError();
+            }
+        }
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+    }
+
+    @Test
+    public void needsMinimumNumberOfCalls() {
+        final MCB breaker = new MCB(new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.COUNT_BASED, 10)
+                .withMinimumNumberOfCalls(5).build(), clock::get);
+        for (int i = 0; i < 4; i++) {
+            breaker.onError();
+        }
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+        breaker.onSuccess();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCountBasedWindowSmallerThanMinimumNumberOfCalls() {
+        // the default minimum number of calls is 10
+        new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.COUNT_BASED, 5).build();
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+        final MCB breaker = new MCB(new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.COUNT_BASED, 4)
+                .withMinimumNumberOfCalls(4).withSlowCallRateThreshold(75).withSlowCallDuration(2, TimeUnit.SECONDS)
+                .build(), clock::get);
+
+        breaker.onSuccess(3, TimeUnit.SECONDS);
+        breaker.onSuccess(100, TimeUnit.MILLISECONDS);
+        breaker.onSuccess(2, TimeUnit.SECONDS);
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+        breaker.onSuccess(2500, TimeUnit.MILLISECONDS);
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+    }
+
+    @Test
+    public void forgetsOutcomesOutsideTimeBasedWindow() {
+        final MCB breaker = new MCB(new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.TIME_BASED, 10)
+                .withMinimumNumberOfCalls(4).withFailureRateThreshold(50).withTimeout(10)
+                .withTimeUnit(TimeUnit.SECONDS).build(), clock::get);
+
+        breaker.onError();
+        breaker.onError();
+        breaker.onError();
+        advance(10_000);
+        // the errors are gone, 1 of 4 failed
+        breaker.onError();
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onSuccess();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+
+        advance(5_000);
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+
+        // a successful probe closes with an empty window
+        advance(10_000);
+        Assertions.assertThat(breaker.isClosed()).isTrue();
+        breaker.onSuccess();
+        breaker.onError();
+        breaker.onError();
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.CLOSED);
+    }
+
+    @Test
+    public void reopensOnFailedProbeInWindowMode() {
+        final MCB breaker = new MCB(new MCBConfig.Builder().withSlidingWindow(SlidingWindowType.COUNT_BASED, 2)
+                .withMinimumNumberOfCalls(2).withTimeout(10).withTimeUnit(TimeUnit.SECONDS).build(), clock::get);
+        breaker.onError();
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+
+        advance(10_000);
+        Assertions.assertThat(breaker.isClosed()).isTrue();
+        breaker.onError();
+        Assertions.assertThat(breaker.state()).isEqualTo(MCB.OPEN);
+        advance(10_000);
+        Assertions.assertThat(breaker.isClosed()).isFalse();
+    }
+
+    /**
+     * A fleet of instances whose breakers opened at the same instant should not
+     * probe the token endpoint at the same instant again.
+     */
+    @Test
+    public void spreadsProbesOfFleetWithDecorrelatedJitter() {
+        final int instances = 200;
+        final MCBConfig config = new MCBConfig.Builder().withErrorThreshold(1).withTimeout(10).withMaxMulti(40)
+                .withTimeUnit(TimeUnit.SECONDS).withDecorrelatedJitter(true).build();
+
+        final List<MCB> fleet = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            fleet.add(new MCB(config, clock::get));
+        }
+        final long start = clock.get();
+        fleet.forEach(MCB::onError);
+
+        // every instance probes once per simulated second and the endpoint keeps failing
+        final List<Set<Long>> probeSecondsPerRound = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            probeSecondsPerRound.add(new HashSet<>());
+        }
+        final int[] rounds = new int[instances];
+        for (long second = 0; second < 3_600; second++) {
+            for (int i = 0; i < instances; i++) {
+                final MCB instance = fleet.get(i);
+                if (instance.isClosed()) {
+                    Assertions.assertThat(clock.get() - start).isGreaterThanOrEqualTo(10_000);
+                    if (rounds[i] < probeSecondsPerRound.size()) {
+                        probeSecondsPerRound.get(rounds[i]).add(second);
+                    }
+                    rounds[i]++;
+                    instance.onError();
+                }
+            }
+            advance(1_000);
+        }
+
+        // first probes land between 10 and 30 seconds, instead of all at 10 seconds
+        Assertions.assertThat(probeSecondsPerRound.get(0)).allMatch(s -> s >= 10 && s <= 30);
+        for (Set<Long> probeSeconds : probeSecondsPerRound) {
+            Assertions.assertThat(probeSeconds.size()).isGreaterThan(15);
+        }
+        // still capped at max multi times the timeout base
+        Assertions.assertThat(Arrays.stream(rounds).min().getAsInt()).isGreaterThanOrEqualTo(3_600 / 400);
+    }
+
+    @Test
+    public void probesFleetInLockstepWithoutJitter() {
+        final MCBConfig config = new MCBConfig.Builder().withErrorThreshold(1).withTimeout(10)
+                .withTimeUnit(TimeUnit.SECONDS).build();
+        final List<MCB> fleet = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fleet.add(new MCB(config, clock::get));
+        }
+        fleet.forEach(MCB::onError);
+
+        advance(9_999);
+        Assertions.assertThat(fleet).noneMatch(MCB::isClosed);
+        advance(1);
+        Assertions.assertThat(fleet).allMatch(MCB::isClosed);
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        final AtomicInteger transitions = new AtomicInteger();
+        final MCB breaker = new MCB(new MCBConfig.Builder().withErrorThreshold(1).withTimeout(0).build(),
+                state -> transitions.incrementAndGet());
+        Assertions.assertThat(cycle(breaker, 1_000)).isEqualTo(2_000);
+        Assertions.assertThat(transitions.get()).isEqualTo(3_000);
+
+        // the transitions log at info, which is enabled for the tests and allocates
+        final Level level = LogManager.getLogger(MCB.class).getLevel();
+        Configurator.setLevel(MCB.class.getName(), Level.WARN);
+        try {
+            // one state object per transition would be ~50MB
+            Allocations.assertAllocatesLessThan(() -> cycle(breaker, 1_000_000), 64 * 1024);
+        } finally {
+            Configurator.setLevel(MCB.class.getName(), level);
+        }
+    }
+
+    /**
+     * Closed, open, half-open and closed again per iteration.
+     */
+    private static int cycle(final MCB breaker, final int times) {
+        int closed = 0;
+        for (int i = 0; i < times; i++) {
+            closed += breaker.isClosed() ? 1 : 0;
+            breaker.onError();
+            // timeout 0: half-open right away
+            while (!breaker.isClosed()) {
+                Thread.onSpinWait();
+            }
+            closed++;
+            breaker.onSuccess();
+        }
+        return closed;
+    }
+
+    private void open() {
+        mcb.onSuccess();
+        for (int i = 0; i < 3; i++) {
+            mcb.onError();
+        }
+        Assertions.assertThat(mcb.state()).isEqualTo(MCB.OPEN);
+    }
+
+    private void advance(final long millis) {
+        clock.addAndGet(millis);
+    }
+
+    private void runConcurrently(final Runnable task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverTheWholeRange() {
+        Assertions.assertThat(LatencyHistogram.index(0)).isEqualTo(0);
+        Assertions.assertThat(LatencyHistogram.index(15)).isEqualTo(15);
+        Assertions.assertThat(LatencyHistogram.index(16)).isEqualTo(16);
+        Assertions.assertThat(LatencyHistogram.index(Long.MAX_VALUE)).isEqualTo(959);
+        Assertions.assertThat(LatencyHistogram.highestValue(959)).isEqualTo(Long.MAX_VALUE);
+
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            final int index = LatencyHistogram.index(value);
+            Assertions.assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+            Assertions.assertThat(LatencyHistogram.highestValue(index - 1)).isLessThan(value);
+            Assertions.assertThat((double) LatencyHistogram.highestValue(index) - value)
+                    .isLessThanOrEqualTo(value / 16.0);
+        }
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertThat(snapshot.getCount()).isEqualTo(1000);
+        Assertions.assertThat(snapshot.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertWithinPrecision(snapshot.getP50(), TimeUnit.MILLISECONDS.toNanos(500));
+        assertWithinPrecision(snapshot.getP99(), TimeUnit.MILLISECONDS.toNanos(990));
+        assertWithinPrecision(snapshot.getP999(), TimeUnit.MILLISECONDS.toNanos(999));
+        Assertions.assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(snapshot.getMax());
+        assertWithinPrecision(snapshot.getValueAtPercentile(0), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void reportsZeroWithoutRecordings() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        Assertions.assertThat(snapshot.getCount()).isZero();
+        Assertions.assertThat(snapshot.getP999()).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPercentile() {
+        new LatencyHistogram().snapshot().getValueAtPercentile(100.1);
+    }
+
+    @Test
+    public void countsConcurrentRecordings() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertThat(histogram.snapshot().getCount()).isEqualTo(400_000);
+        Assertions.assertThat(histogram.snapshot().getMax()).isEqualTo(99_999);
+    }
+
+    private static void assertWithinPrecision(final long actual, final long expected) {
+        Assertions.assertThat(actual).isBetween(expected, expected + expected / 16);
+    }
+
+}
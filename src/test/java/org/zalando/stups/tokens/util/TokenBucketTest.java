@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 Zalando SE (http://tech.zalando.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zalando.stups.tokens.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong(-42);
+
+    @Test
+    public void startsFullAndRefills() {
+        final TokenBucket bucket = new TokenBucket(2, 3, clock::get);
+
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isFalse();
+        Assertions.assertThat(bucket.nanosUntilPermit()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(499));
+        Assertions.assertThat(bucket.tryAcquire()).isFalse();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        Assertions.assertThat(bucket.nanosUntilPermit()).isZero();
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void doesNotSaveUpMoreThanBurst() {
+        final TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isTrue();
+        Assertions.assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void sustainsConfiguredRate() {
+        final TokenBucket bucket = new TokenBucket(5, 1, clock::get);
+        int acquired = 0;
+        for (int millis = 0; millis < 10_000; millis++) {
+            if (bucket.tryAcquire()) {
+                acquired++;
+            }
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        Assertions.assertThat(acquired).isEqualTo(50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new TokenBucket(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBurst() {
+        new TokenBucket(1, 0);
+    }
+}